@@ -0,0 +1,81 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The original DumbLazyFileTemplateStore (one lock around the whole store,
+ * and a stat of the file on every lookup), kept as a benchmark baseline.
+ * It lives in this package for access to DumbTemplateStore's logging methods.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class LegacyLazyFileTemplateStore extends DumbTemplateStore {
+
+    private final File _dir;
+    private final Map<String, FileTemplateEntry> _fileTemplates = new java.util.HashMap<>();
+
+    public LegacyLazyFileTemplateStore(File dir) {
+        super(null);
+        _dir = dir;
+    }
+
+    @Override public synchronized DumbTemplate get(String templatePath) {
+        DumbTemplate override = _templates.get(templatePath);
+        if (override != null) return override;
+
+        FileTemplateEntry result = _fileTemplates.get(templatePath);
+        if (result != null) return result.get();
+
+        File f = _dir;
+        for (String part : Util.splitAndNormalizePath(new LinkedList<>(), templatePath)) {
+            f = new File(f, part);
+        }
+
+        result = new FileTemplateEntry(templatePath, f);
+        _fileTemplates.put(templatePath, result);
+        return result.get();
+    }
+
+    // the original store looked up every #include and #inside on every
+    // render, so links to its templates go through get() each time too
+    @Override protected Supplier<DumbTemplate> bind(String templatePath) {
+        return (get(templatePath) == null) ? null : () -> get(templatePath);
+    }
+
+    private class FileTemplateEntry {
+        private long _lastModified;
+        private final File _f;
+        private DumbTemplate _template;
+        private final String _templatePath;
+
+        private FileTemplateEntry(String templatePath, File f) {
+            _templatePath = templatePath;
+            _f = f;
+            _lastModified = Long.MIN_VALUE;
+        }
+
+        public DumbTemplate get() {
+            if (_f.canRead()) {
+                long mod = _f.lastModified();
+                if (_template == null || _f.lastModified() != _lastModified) {
+                    try {
+                        String s = new String(Files.readAllBytes(_f.toPath()));
+                        _template = new DumbTemplate(_templatePath, LegacyLazyFileTemplateStore.this, s);
+                        _lastModified = mod;
+                    } catch (IOException e) {
+                        exception(e);
+                        return null;
+                    }
+                }
+            } else {
+                error("Template not found in filesystem: " + _f.getAbsolutePath());
+            }
+            return _template;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbTemplate;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rendering one small template for many rows with renderAll() on pools of
+ * various sizes, in order and not.  Scores are rows per second.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    private static final int ROWS = 10000;
+
+    @Param({"1", "8", "32"})
+    public int parallelism;
+
+    @Param({"true", "false"})
+    public boolean ordered;
+
+    private DumbTemplate _template;
+    private List<Map<String, Object>> _rows;
+    private ForkJoinPool _pool;
+
+    @Setup public void setup() {
+        DumbTemplateStore store = new DumbTemplateStore();
+        store.add("nav.txt", "<nav>{= user}</nav>");
+        _template = store.add("row.txt", Pages.SMALL).get("row.txt");
+        _rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; ++i) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("title", "Row " + i);
+            row.put("user", "user" + i + "@example.com");
+            row.put("loggedIn", i % 3 != 0);
+            row.put("footer", "<p>" + i + "</p>");
+            _rows.add(row);
+        }
+        _pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown public void tearDown() {
+        _pool.shutdown();
+    }
+
+    @Benchmark @OperationsPerInvocation(ROWS)
+    public void renderAll(Blackhole bh) {
+        _template.renderAll(_rows.stream(), ordered, bh::consume, _pool);
+    }
+}
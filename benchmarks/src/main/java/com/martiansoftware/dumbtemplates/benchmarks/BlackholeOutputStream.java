@@ -0,0 +1,19 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import java.io.OutputStream;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Discards rendered bytes without letting the JIT discard the rendering.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class BlackholeOutputStream extends OutputStream {
+
+    private final Blackhole _bh;
+
+    BlackholeOutputStream(Blackhole bh) { _bh = bh; }
+
+    @Override public void write(int b) { _bh.consume(b); }
+    @Override public void write(byte[] b, int off, int len) { _bh.consume(b); _bh.consume(len); }
+}
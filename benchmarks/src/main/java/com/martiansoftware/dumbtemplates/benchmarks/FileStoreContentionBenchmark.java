@@ -0,0 +1,85 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbLazyFileTemplateStore;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import com.martiansoftware.dumbtemplates.LegacyLazyFileTemplateStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Renders an include-heavy page from the original (globally synchronized,
+ * stat-per-lookup) file store and from the current one.  Run main() to
+ * compare them at 1 to 64 threads:
+ * 
+ * <pre>java -cp target/benchmarks.jar com.martiansoftware.dumbtemplates.benchmarks.FileStoreContentionBenchmark</pre>
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileStoreContentionBenchmark {
+
+    static final int INCLUDES = 40;
+
+    @Param({"legacy", "concurrent"})
+    public String store;
+
+    private Path _dir;
+    private DumbTemplateStore _store;
+    private Map<String, Object> _ctx;
+
+    @Setup public void setup() throws IOException {
+        _dir = Files.createTempDirectory("dumbtemplates-bench");
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < INCLUDES; ++i) {
+            Files.write(_dir.resolve("widget" + i + ".txt"), ("<div id=\"w" + i + "\">{= user}</div>\n").getBytes("UTF-8"));
+            page.append("{#include widget").append(i).append(".txt}\n");
+        }
+        Files.write(_dir.resolve("page.txt"), page.toString().getBytes("UTF-8"));
+        _store = "legacy".equals(store) ? new LegacyLazyFileTemplateStore(_dir.toFile())
+                                        : new DumbLazyFileTemplateStore(_dir.toFile());
+        _ctx = Pages.context();
+        _store.render("page.txt", _ctx);
+    }
+
+    @TearDown public void tearDown() throws IOException {
+        for (int i = 0; i < INCLUDES; ++i) Files.deleteIfExists(_dir.resolve("widget" + i + ".txt"));
+        Files.deleteIfExists(_dir.resolve("page.txt"));
+        Files.deleteIfExists(_dir);
+    }
+
+    @Benchmark public String renderPage() {
+        return _store.render("page.txt", _ctx);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            new Runner(new OptionsBuilder()
+                            .include(FileStoreContentionBenchmark.class.getSimpleName())
+                            .threads(threads)
+                            .build()).run();
+        }
+    }
+}
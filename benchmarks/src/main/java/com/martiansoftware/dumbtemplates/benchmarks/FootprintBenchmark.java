@@ -0,0 +1,83 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbLazyFileTemplateStore;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The memory cost of a store full of templates.  Loads 2,000 template files
+ * of about 5 KB each and reports, as extra counters, the bytes allocated
+ * while loading each template and the bytes each one keeps on the heap
+ * afterwards.  Time is reported too, but is not the point.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FootprintBenchmark {
+
+    static final int TEMPLATES = 2000;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long allocatedBytesPerTemplate;
+        public long retainedBytesPerTemplate;
+    }
+
+    private Path _dir;
+    private DumbTemplateStore _store; // keeps the loaded templates reachable until the next load
+
+    @Setup public void setup() throws IOException {
+        _dir = Files.createTempDirectory("dumbtemplates-bench");
+        String def = Pages.literalHeavy(4096) + Pages.variableHeavy(1024);
+        for (int i = 0; i < TEMPLATES; ++i) {
+            Files.write(_dir.resolve("t" + i + ".txt"), ("<!-- template " + i + " -->\n" + def).getBytes("UTF-8"));
+        }
+    }
+
+    @TearDown public void tearDown() throws IOException {
+        for (int i = 0; i < TEMPLATES; ++i) Files.deleteIfExists(_dir.resolve("t" + i + ".txt"));
+        Files.deleteIfExists(_dir);
+    }
+
+    @Benchmark public DumbTemplateStore load(Footprint f) {
+        _store = null;
+        long before = usedHeap();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        DumbTemplateStore store = new DumbLazyFileTemplateStore(_dir.toFile());
+        for (int i = 0; i < TEMPLATES; ++i) store.get("t" + i + ".txt");
+        f.allocatedBytesPerTemplate = (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated) / TEMPLATES;
+        _store = store;
+        f.retainedBytesPerTemplate = (usedHeap() - before) / TEMPLATES;
+        return store;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; ++i) System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,48 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbTemplate;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering a page nested inside one or more #inside layouts.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsideBenchmark {
+
+    @Param({"1", "3"})
+    public int levels;
+
+    private DumbTemplate _template;
+    private Map<String, Object> _ctx;
+
+    @Setup public void setup() {
+        DumbTemplateStore store = new DumbTemplateStore();
+        Pages.layouts(store, levels);
+        _template = store.get("inside0");
+        _ctx = Pages.context();
+    }
+
+    @Benchmark public String render() {
+        return _template.render(_ctx);
+    }
+}
@@ -0,0 +1,54 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbTemplate;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering {$} (the whole context) and {$ VAR} as JSON, including a
+ * variable whose JSON has been frozen in advance.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private DumbTemplate _all, _var;
+    private Map<String, Object> _ctx, _frozenCtx;
+
+    @Setup public void setup() {
+        _all = new DumbTemplate("all.txt", null, "<script>var ctx = {$};</script>");
+        _var = new DumbTemplate("var.txt", null, "<script>var data = {$ data};</script>");
+        _ctx = Pages.context();
+        _frozenCtx = new java.util.HashMap<>(_ctx);
+        _frozenCtx.put("data", new DumbTemplateStore().freezeJson(_ctx.get("data")));
+    }
+
+    @Benchmark public String wholeContext() {
+        return _all.render(_ctx);
+    }
+
+    @Benchmark public String singleVar() {
+        return _var.render(_ctx);
+    }
+
+    @Benchmark public String frozenVar() {
+        return _var.render(_frozenCtx);
+    }
+}
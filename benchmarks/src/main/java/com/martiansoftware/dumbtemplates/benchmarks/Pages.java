@@ -0,0 +1,86 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Template definitions and contexts shared by the benchmarks.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class Pages {
+
+    private Pages() {}
+
+    static final String SMALL = "<h1>{= title}</h1>\n<p>Hello, {= user}!  {#include nav.txt if loggedIn}</p>{=! footer}\n";
+
+    /**
+     * About 90% static markup, like most of our pages.
+     */
+    static String literalHeavy(int approxChars) {
+        StringBuilder s = new StringBuilder();
+        while (s.length() < approxChars) {
+            s.append("<div class=\"row\">\n  <p>Mostly static markup with the occasional {= user} in it.</p>\n")
+             .append("  <ul class=\"menu\"><li><a href=\"/one\">one</a></li><li><a href=\"/two\">two</a></li></ul>\n</div>\n");
+        }
+        return s.toString();
+    }
+
+    /**
+     * Mostly variables, roughly half of which need escaping.
+     */
+    static String variableHeavy(int approxChars) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; s.length() < approxChars; ++i) {
+            s.append("<td>{= v").append(i % 10).append("}</td><td>{=! v").append((i + 5) % 10).append("}</td>\n");
+        }
+        return s.toString();
+    }
+
+    /**
+     * Every kind of directive, in about equal measure with static markup.
+     */
+    static String mixed(int approxChars) {
+        StringBuilder s = new StringBuilder();
+        while (s.length() < approxChars) {
+            s.append("<div class=\"row\">\n  <p>Some static markup for {= user} with a few words in it.</p>\n")
+             .append("  {#include nav.txt if loggedIn}{=! footer}{$ data}\n</div>\n");
+        }
+        return s.toString();
+    }
+
+    /**
+     * Adds templates "chain0" through "chain[depth]" where each includes the next.
+     */
+    static void includeChain(DumbTemplateStore store, int depth) {
+        for (int i = 0; i < depth; ++i) {
+            store.add("chain" + i, "<div class=\"level" + i + "\">{= user} {#include chain" + (i + 1) + "}</div>\n");
+        }
+        store.add("chain" + depth, "<p>bottom of the chain for {= user}</p>\n");
+    }
+
+    /**
+     * Adds "inside0" (the page) nested inside layouts "inside1" through "inside[levels]".
+     */
+    static void layouts(DumbTemplateStore store, int levels) {
+        store.add("inside0", "{#inside inside1}" + literalHeavy(4096));
+        for (int i = 1; i < levels; ++i) {
+            store.add("inside" + i, "{#inside inside" + (i + 1) + "}<section>{=! content}</section>\n");
+        }
+        store.add("inside" + levels, "<html><head><title>{= title}</title></head><body>{=! content}</body></html>\n");
+    }
+
+    static Map<String, Object> context() {
+        Map<String, Object> ctx = new java.util.HashMap<>();
+        ctx.put("title", "Benchmarks & Such");
+        ctx.put("user", "someone@example.com");
+        ctx.put("loggedIn", true);
+        ctx.put("footer", "<p>&copy; nobody</p>");
+        for (int i = 0; i < 10; ++i) ctx.put("v" + i, (i % 2 == 0) ? "value <" + i + ">" : "value " + i);
+        Map<String, Object> data = new java.util.LinkedHashMap<>();
+        for (int i = 0; i < 100; ++i) data.put("key" + i, Arrays.asList(i, "string " + i, i * 1.5, i % 2 == 0));
+        ctx.put("data", data);
+        return ctx;
+    }
+}
@@ -0,0 +1,84 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbTemplate;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing (tokenizing and compiling) small and large templates, and, for
+ * comparison, just finding their directives with the regular expressions
+ * that templates used to be parsed with.  The "chars" counter is the number
+ * of template chars parsed per second.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"small", "large", "mixed"})
+    public String size;
+
+    // the reference grammar in DumbTemplate.Directive, each of which used to be run over every template
+    private static final Pattern[] DIRECTIVES = {
+        Pattern.compile("\\{#\\s*include\\s+([^}\\s]+)(?:\\s+(if|unless)\\s+([^}\\s]+)(?:\\s+([^}]+?))?)?\\s*\\}"),
+        Pattern.compile("\\{#\\s*inside\\s+([^}\\s]+)\\s*\\}"),
+        Pattern.compile("\\{=(!)?\\s*([^}\\s]+)\\s*\\}"),
+        Pattern.compile("\\{\\$\\s*([^}\\s]+)?\\s*\\}")
+    };
+
+    private String _def;
+    private final DumbTemplateStore _store = new DumbTemplateStore();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Chars {
+        public long chars;
+
+        @Setup(Level.Iteration) public void reset() { chars = 0; }
+    }
+
+    @Setup public void setup() {
+        if ("small".equals(size)) {
+            _def = Pages.SMALL;
+        } else if ("large".equals(size)) {
+            _def = Pages.literalHeavy(200 * 1024) + Pages.variableHeavy(50 * 1024);
+        } else {
+            _def = Pages.mixed(1024 * 1024);
+        }
+    }
+
+    @Benchmark public DumbTemplate parse(Chars c) {
+        c.chars += _def.length();
+        return new DumbTemplate("parsed.txt", _store, _def);
+    }
+
+    @Benchmark public int regexScan(Chars c) {
+        c.chars += _def.length();
+        int found = 0;
+        for (Pattern p : DIRECTIVES) {
+            Matcher m = p.matcher(_def);
+            while (m.find()) ++found;
+        }
+        return found;
+    }
+}
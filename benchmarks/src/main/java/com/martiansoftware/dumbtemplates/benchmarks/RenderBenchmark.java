@@ -0,0 +1,83 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbTemplate;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rendering literal-heavy and variable-heavy pages to each kind of output,
+ * with and without buffer pooling.  toEncodingPrintWriter() is how a servlet
+ * renders to its response's PrintWriter, which encodes every char; compare
+ * it with toOutputStream(), which copies static text as pre-encoded bytes.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"literal", "variable"})
+    public String page;
+
+    @Param({"200"})
+    public int kb;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private DumbTemplate _template;
+    private Map<String, Object> _ctx;
+
+    @Setup public void setup() {
+        String def = "literal".equals(page) ? Pages.literalHeavy(kb * 1024) : Pages.variableHeavy(kb * 1024);
+        DumbTemplateStore store = new DumbTemplateStore();
+        if (pooled) store.setBufferPooling(1024 * 1024);
+        _template = new DumbTemplate("page.txt", store, def);
+        _ctx = Pages.context();
+    }
+
+    @Benchmark public String toStringResult() {
+        return _template.render(_ctx);
+    }
+
+    @Benchmark public void toPrintWriter(Blackhole bh) {
+        PrintWriter out = new PrintWriter(new Writer() {
+            @Override public void write(char[] cbuf, int off, int len) { bh.consume(cbuf); bh.consume(len); }
+            @Override public void flush() {}
+            @Override public void close() {}
+        });
+        _template.render(_ctx, out);
+    }
+
+    @Benchmark public void toEncodingPrintWriter(Blackhole bh) {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new BlackholeOutputStream(bh), StandardCharsets.UTF_8));
+        _template.render(_ctx, out);
+        out.flush();
+    }
+
+    @Benchmark public void toOutputStream(Blackhole bh) throws IOException {
+        _template.render(_ctx, new BlackholeOutputStream(bh));
+    }
+}
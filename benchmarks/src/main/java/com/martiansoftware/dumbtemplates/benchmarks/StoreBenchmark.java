@@ -0,0 +1,80 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbLazyClasspathTemplateStore;
+import com.martiansoftware.dumbtemplates.DumbLazyFileTemplateStore;
+import com.martiansoftware.dumbtemplates.DumbTemplate;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent get() of already-loaded templates from the lazy stores.  Use
+ * -t to change the number of threads.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class StoreBenchmark {
+
+    static final String[] NAMES = { "page.txt", "nav.txt", "footer.txt", "widgets/clock.txt" };
+
+    private Path _dir;
+    private DumbTemplateStore _fileStore, _classpathStore;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int i = 0;
+        String next() { return NAMES[(i++) & 3]; }
+    }
+
+    @Setup public void setup() throws IOException {
+        _dir = Files.createTempDirectory("dumbtemplates-bench");
+        for (String name : NAMES) {
+            Path p = _dir.resolve(name);
+            Files.createDirectories(p.getParent());
+            try (java.io.InputStream in = getClass().getResourceAsStream("/bench/" + name)) {
+                Files.copy(in, p);
+            }
+        }
+        _fileStore = new DumbLazyFileTemplateStore(_dir.toFile());
+        _classpathStore = new DumbLazyClasspathTemplateStore("/bench");
+        for (String name : NAMES) {
+            _fileStore.get(name);
+            _classpathStore.get(name);
+        }
+    }
+
+    @TearDown public void tearDown() throws IOException {
+        for (String name : NAMES) Files.deleteIfExists(_dir.resolve(name));
+        Files.deleteIfExists(_dir.resolve("widgets"));
+        Files.deleteIfExists(_dir);
+    }
+
+    @Benchmark public DumbTemplate fileStoreGet(Cursor c) {
+        return _fileStore.get(c.next());
+    }
+
+    @Benchmark public DumbTemplate classpathStoreGet(Cursor c) {
+        return _classpathStore.get(c.next());
+    }
+}
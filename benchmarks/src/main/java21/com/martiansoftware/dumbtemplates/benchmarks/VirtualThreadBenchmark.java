@@ -0,0 +1,136 @@
+package com.martiansoftware.dumbtemplates.benchmarks;
+
+import com.martiansoftware.dumbtemplates.DumbLazyFileTemplateStore;
+import com.martiansoftware.dumbtemplates.DumbTemplateStore;
+import com.martiansoftware.dumbtemplates.LegacyLazyFileTemplateStore;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders an include-heavy page from 100,000 virtual threads at once, from
+ * the original file store (a synchronized get() that reads files while
+ * holding the monitor) and the current one, to a PrintWriter over a
+ * StringWriter (both synchronized), an unsynchronized Writer, and an
+ * OutputStream.  Both stores check their files on every lookup, so that
+ * the file I/O happens under their locks as often as possible.  Scores are
+ * renders per second.  Only built on Java 21 and later (see the jdk21
+ * profile in pom.xml).
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    static final int INCLUDES = 20;
+    static final int THREADS = 100000;
+
+    @Param({"legacy", "concurrent"})
+    public String store;
+
+    @Param({"printWriter", "writer", "outputStream"})
+    public String output;
+
+    private Path _dir;
+    private DumbTemplateStore _store;
+    private Map<String, Object> _ctx;
+
+    @Setup public void setup() throws IOException {
+        _dir = Files.createTempDirectory("dumbtemplates-bench");
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < INCLUDES; ++i) {
+            Files.write(_dir.resolve("widget" + i + ".txt"), ("<div id=\"w" + i + "\">{= user}</div>\n").getBytes("UTF-8"));
+            page.append("{#include widget").append(i).append(".txt}\n");
+        }
+        Files.write(_dir.resolve("page.txt"), page.toString().getBytes("UTF-8"));
+        _store = "legacy".equals(store) ? new LegacyLazyFileTemplateStore(_dir.toFile())
+                                        : new DumbLazyFileTemplateStore(_dir.toFile()).setRevalidationInterval(0, TimeUnit.SECONDS);
+        _ctx = Pages.context();
+        _store.render("page.txt", _ctx);
+    }
+
+    @TearDown public void tearDown() throws IOException {
+        for (int i = 0; i < INCLUDES; ++i) Files.deleteIfExists(_dir.resolve("widget" + i + ".txt"));
+        Files.deleteIfExists(_dir.resolve("page.txt"));
+        Files.deleteIfExists(_dir);
+    }
+
+    @Benchmark @OperationsPerInvocation(THREADS)
+    public long renderFromVirtualThreads() {
+        LongAdder written = new LongAdder();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < THREADS; ++i) executor.submit(() -> render(written));
+        }
+        return written.sum();
+    }
+
+    private void render(LongAdder written) {
+        try {
+            switch (output) {
+                case "printWriter": {
+                    StringWriter sw = new StringWriter();
+                    _store.render("page.txt", _ctx, new PrintWriter(sw));
+                    written.add(sw.getBuffer().length());
+                    break;
+                }
+                case "writer": {
+                    CountingWriter w = new CountingWriter();
+                    _store.render("page.txt", _ctx, w);
+                    written.add(w.count);
+                    break;
+                }
+                default: {
+                    CountingOutputStream out = new CountingOutputStream();
+                    _store.render("page.txt", _ctx, out);
+                    written.add(out.count);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class CountingWriter extends Writer {
+        long count;
+        @Override public void write(char[] c, int off, int len) { count += len; }
+        @Override public void write(String s, int off, int len) { count += len; }
+        @Override public void write(int c) { ++count; }
+        @Override public void flush() {}
+        @Override public void close() {}
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+        @Override public void write(byte[] b, int off, int len) { count += len; }
+        @Override public void write(int b) { ++count; }
+    }
+}
@@ -0,0 +1,74 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small pool of render buffers shared by all threads.  Buffers live in a
+ * fixed number of slots, and each thread starts looking in the slot picked
+ * by its id, so threads rarely contend for the same slot.  The pool never holds more
+ * than one buffer of each kind per slot no matter how many threads there
+ * are, so it stays small even with a great many (e.g. virtual) threads.
+ *
+ * A buffer that has grown beyond the size cap is dropped rather than
+ * returned to the pool, so one huge page does not pin memory forever.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class BufferPool {
+
+    static final int BYTE_BUFFER_SIZE = 8192;
+
+    private final AtomicReferenceArray<StringBuilder> _chars;
+    private final AtomicReferenceArray<byte[]> _bytes;
+    private final int _mask;
+    private final int _maxChars;
+
+    BufferPool(int maxChars) {
+        int slots = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        _chars = new AtomicReferenceArray<>(slots);
+        _bytes = new AtomicReferenceArray<>(slots);
+        _mask = slots - 1;
+        _maxChars = maxChars;
+    }
+
+    int maxChars() { return _maxChars; }
+
+    private int slot() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & _mask;
+    }
+
+    /**
+     * Returns an empty StringBuilder with at least the specified capacity.
+     */
+    StringBuilder chars(int capacity) {
+        int slot = slot();
+        StringBuilder result = _chars.getAndSet(slot, null);
+        if (result == null) result = _chars.getAndSet((slot + 1) & _mask, null);
+        if (result == null) return new StringBuilder(capacity);
+        result.setLength(0);
+        result.ensureCapacity(capacity);
+        return result;
+    }
+
+    void release(StringBuilder sb) {
+        if (sb.capacity() > _maxChars) return;
+        int slot = slot();
+        if (!_chars.compareAndSet(slot, null, sb)) _chars.compareAndSet((slot + 1) & _mask, null, sb);
+    }
+
+    /**
+     * Returns a byte array of BYTE_BUFFER_SIZE bytes.
+     */
+    byte[] bytes() {
+        int slot = slot();
+        byte[] result = _bytes.getAndSet(slot, null);
+        if (result == null) result = _bytes.getAndSet((slot + 1) & _mask, null);
+        return (result == null) ? new byte[BYTE_BUFFER_SIZE] : result;
+    }
+
+    void release(byte[] b) {
+        int slot = slot();
+        if (!_bytes.compareAndSet(slot, null, b)) _bytes.compareAndSet((slot + 1) & _mask, null, b);
+    }
+}
@@ -0,0 +1,199 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A DumbTemplateStore that loads already-compiled templates from a bundle
+ * written by writeBundle() (or by the command line tool's "bundle" command),
+ * so that no template has to be read or parsed at startup.  Every template
+ * in the bundle is loaded when the store is created.  Templates can still
+ * be added via add() as usual.
+ *
+ * A bundle holds each template's static text as UTF-8 along with its
+ * directives, with #include and #inside references already resolved.
+ *
+ * <pre>
+ * // at build time
+ * try (OutputStream out = new FileOutputStream("templates.bundle")) {
+ *     DumbBundleTemplateStore.writeBundle(new DumbLazyFileTemplateStore(new File("templates")), out);
+ * }
+ *
+ * // at runtime
+ * DumbTemplateStore store = new DumbBundleTemplateStore(getClass().getResourceAsStream("/templates.bundle"));
+ * </pre>
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class DumbBundleTemplateStore extends DumbTemplateStore {
+
+    private static final int MAGIC = 0x44544231; // "DTB1"
+
+    /**
+     * Creates a new DumbBundleTemplateStore from the specified bundle file.
+     *
+     * @param bundle the bundle file
+     * @throws IOException if the bundle cannot be read or is not a bundle
+     */
+    public DumbBundleTemplateStore(File bundle) throws IOException {
+        this(bundle, null);
+    }
+
+    /**
+     * Creates a new DumbBundleTemplateStore from the specified bundle file.
+     *
+     * @param bundle the bundle file
+     * @param log receives logging events
+     * @throws IOException if the bundle cannot be read or is not a bundle
+     */
+    public DumbBundleTemplateStore(File bundle, DumbLogger log) throws IOException {
+        super(log);
+        try (InputStream in = new FileInputStream(bundle)) {
+            read(in);
+        }
+    }
+
+    /**
+     * Creates a new DumbBundleTemplateStore from a bundle read from the
+     * specified InputStream, which is not closed.
+     *
+     * @param bundle the bundle
+     * @throws IOException if the bundle cannot be read or is not a bundle
+     */
+    public DumbBundleTemplateStore(InputStream bundle) throws IOException {
+        this(bundle, null);
+    }
+
+    /**
+     * Creates a new DumbBundleTemplateStore from a bundle read from the
+     * specified InputStream, which is not closed.
+     *
+     * @param bundle the bundle
+     * @param log receives logging events
+     * @throws IOException if the bundle cannot be read or is not a bundle
+     */
+    public DumbBundleTemplateStore(InputStream bundle, DumbLogger log) throws IOException {
+        super(log);
+        read(bundle);
+    }
+
+    /**
+     * Loads every template available to a store and writes them all to the
+     * specified OutputStream as a bundle.  The stream is not closed.
+     *
+     * @param store the store whose templates should be bundled (e.g., a DumbLazyFileTemplateStore)
+     * @param out receives the bundle
+     * @return the number of templates written
+     * @throws IOException if writing fails or any template cannot be loaded
+     */
+    public static int writeBundle(DumbTemplateStore store, OutputStream out) throws IOException {
+        List<DumbTemplate> templates = new ArrayList<>();
+        for (String name : new TreeSet<>(store.templateNames())) {
+            DumbTemplate t = store.get(name);
+            if (t == null) throw new IOException("Unable to load template " + name);
+            templates.add(t);
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(templates.size());
+        for (DumbTemplate t : templates) write(t, data);
+        data.flush();
+        return templates.size();
+    }
+
+    private static void write(DumbTemplate t, DataOutputStream out) throws IOException {
+        Program p = t.getProgram();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < p.ops.length; ++i) {
+            if (p.ops[i] == Program.LITERAL) {
+                Literal l = (Literal) p.args[i];
+                text.append(l.text, l.off, l.off + l.len);
+            }
+        }
+        byte[] utf8 = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        out.writeUTF(t.getName());
+        out.writeInt(utf8.length);
+        out.write(utf8);
+        out.writeInt(p.ops.length);
+        for (int i = 0; i < p.ops.length; ++i) {
+            out.writeByte(p.ops[i]);
+            switch (p.ops[i]) {
+                case Program.LITERAL: out.writeInt(((Literal) p.args[i]).len); break;
+                case Program.VAR:
+                case Program.RAW_VAR:
+                case Program.JSON:
+                case Program.INSIDE: writeString((String) p.args[i], out); break;
+                case Program.INCLUDE:
+                    Program.Include inc = (Program.Include) p.args[i];
+                    out.writeUTF(inc.template);
+                    out.writeBoolean(inc.unless);
+                    writeString(inc.var, out);
+                    writeString(inc.value, out);
+                    break;
+                default: break;
+            }
+        }
+    }
+
+    private void read(InputStream bundle) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(bundle));
+        if (in.readInt() != MAGIC) throw new IOException("Not a template bundle");
+        int count = in.readInt();
+        for (int n = 0; n < count; ++n) {
+            long start = System.nanoTime();
+            DumbTemplate t = readTemplate(in);
+            if (tryRegister(t)) {
+                _templates.put(t.getName(), t);
+                loaded(t.getName(), System.nanoTime() - start, false);
+            }
+        }
+    }
+
+    private DumbTemplate readTemplate(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        Program.Builder p = new Program.Builder(new String(utf8, StandardCharsets.UTF_8));
+        int pos = 0;
+        for (int i = 0, ops = in.readInt(); i < ops; ++i) {
+            byte op = in.readByte();
+            switch (op) {
+                case Program.LITERAL:
+                    int len = in.readInt();
+                    p.literal(pos, pos + len);
+                    pos += len;
+                    break;
+                case Program.VAR:
+                case Program.RAW_VAR:
+                case Program.JSON:
+                case Program.INSIDE: p.add(op, readString(in)); break;
+                case Program.INCLUDE: p.add(op, new Program.Include(in.readUTF(), in.readBoolean(), readString(in), readString(in))); break;
+                case Program.FLUSH: break; // written by earlier versions, and does nothing
+                default: throw new IOException("Corrupt template bundle (unknown opcode " + op + " in " + name + ")");
+            }
+        }
+        return new DumbTemplate(name, this, p.build());
+    }
+
+    private static void writeString(String s, DataOutputStream out) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,238 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the rendered output of #included templates, so that fragments
+ * such as menus and footers that depend on only a few context variables
+ * are not rendered again on every request.  Enable it with
+ * DumbTemplateStore.setFragmentCache().
+ *
+ * Output is cached under the included template plus the values of every
+ * variable that it (or anything it includes) refers to.  Only simple,
+ * immutable values (Strings, numbers, booleans, characters, enums and
+ * DumbFrozenJsons) are used as keys; if any of the variables has some other
+ * kind of value, or the template inserts the entire context via {$}, the
+ * fragment is rendered as usual.  Cached fragments are discarded when any
+ * template they are built from changes.
+ *
+ * Because a cached fragment is not rendered, its "variable not defined"
+ * warnings are only logged when it is first rendered.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public final class DumbFragmentCache {
+
+    private final DumbTemplateStore _store;
+    private final int _maxEntries;
+    private final long _ttlNanos;
+    private final Map<Key, Fragment> _fragments;                              // guarded by itself
+    private final ConcurrentHashMap<String, Plan> _plans = new ConcurrentHashMap<>();
+    private final AtomicLong _generation = new AtomicLong();                  // incremented on every invalidation
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _uncacheable = new LongAdder();
+
+    DumbFragmentCache(DumbTemplateStore store, int maxEntries, long ttl, TimeUnit unit) {
+        _store = store;
+        _maxEntries = maxEntries;
+        _ttlNanos = unit.toNanos(ttl);
+        _fragments = new LinkedHashMap<Key, Fragment>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Key, Fragment> eldest) {
+                if (size() <= _maxEntries) return false;
+                _evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /** @return the number of includes served from the cache */
+    public long getHits() { return _hits.sum(); }
+
+    /** @return the number of cacheable includes that had to be rendered */
+    public long getMisses() { return _misses.sum(); }
+
+    /** @return the number of fragments discarded to make room for others, or because they expired */
+    public long getEvictions() { return _evictions.sum(); }
+
+    /** @return the number of includes that could not be cached */
+    public long getUncacheable() { return _uncacheable.sum(); }
+
+    /** @return the number of fragments currently cached */
+    public int size() {
+        synchronized (_fragments) { return _fragments.size(); }
+    }
+
+    /**
+     * Discards every cached fragment.
+     */
+    public void clear() {
+        _generation.incrementAndGet();
+        _plans.clear();
+        synchronized (_fragments) { _fragments.clear(); }
+    }
+
+    @Override public String toString() {
+        return String.format("DumbFragmentCache[size=%d, hits=%d, misses=%d, evictions=%d, uncacheable=%d]",
+                                size(), getHits(), getMisses(), getEvictions(), getUncacheable());
+    }
+
+    /**
+     * Renders an included template, from the cache if possible.
+     */
+    void render(DumbTemplate t, Map<String, Object> ctx, Sink out) {
+        long generation = _generation.get();
+        Plan plan = plan(t, generation);
+        Object[] values = (plan == null) ? null : plan.values(ctx);
+        if (values == null) {
+            _uncacheable.increment();
+            t.renderIncluded(ctx, out);
+            return;
+        }
+
+        Key key = new Key(t, values);
+        Fragment f;
+        synchronized (_fragments) { f = _fragments.get(key); }
+        long now = System.nanoTime();
+        if (f != null && _ttlNanos > 0 && now - f.expires >= 0) {
+            synchronized (_fragments) { _fragments.remove(key, f); }
+            _evictions.increment();
+            f = null;
+        }
+        if (f == null) {
+            _misses.increment();
+            Sink s = new Sink.StringSink(new StringBuilder(t.getOutputSizeEstimate()), out.serial());
+            t.renderIncluded(ctx, s);
+            f = new Fragment(new Literal(s.toString()), now + _ttlNanos);
+            if (_generation.get() == generation) { // don't cache anything rendered while templates were changing
+                synchronized (_fragments) { _fragments.put(key, f); }
+            }
+        } else {
+            _hits.increment();
+        }
+        out.write(f.output);
+    }
+
+    /**
+     * Discards any cached output of the named templates.
+     */
+    void invalidate(Collection<String> templateNames) {
+        _generation.incrementAndGet();
+        Set<String> names = new HashSet<>(templateNames);
+        _plans.keySet().removeAll(names);
+        synchronized (_fragments) { _fragments.keySet().removeIf(k -> names.contains(k.template.getName())); }
+    }
+
+    // returns the plan for caching a template, or null if it cannot be cached
+    private Plan plan(DumbTemplate t, long generation) {
+        Plan result = _plans.get(t.getName());
+        if (result == null || result.template != t) {
+            result = new Plan(t);
+            if (_generation.get() == generation) _plans.put(t.getName(), result);
+        }
+        return result.vars == null ? null : result;
+    }
+
+    /**
+     * Everything needed to cache a particular template: the variables that
+     * it and the templates it includes refer to, and links to those templates.
+     */
+    private class Plan {
+        final DumbTemplate template;
+        final String[] vars;    // null if the template cannot be cached
+        final Link[] links;
+
+        Plan(DumbTemplate t) {
+            template = t;
+            Set<String> vars = new LinkedHashSet<>();
+            List<Link> links = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            Deque<DumbTemplate> todo = new ArrayDeque<>();
+            todo.add(t);
+            while (!todo.isEmpty() && vars != null) {
+                DumbTemplate d = todo.remove();
+                Set<String> v = d.getVariables();
+                if (v == null) {
+                    vars = null; // uses the entire context
+                } else {
+                    vars.addAll(v);
+                    for (String dep : d.getDependencies()) {
+                        if (!seen.add(dep)) continue;
+                        Link l = _store.link(dep);
+                        links.add(l);
+                        DumbTemplate found = l.get();
+                        if (found != null) todo.add(found);
+                    }
+                }
+            }
+            this.vars = (vars == null) ? null : vars.toArray(new String[vars.size()]);
+            this.links = links.toArray(new Link[links.size()]);
+        }
+
+        // returns the key values for this context, or null if they can't be used as a key
+        Object[] values(Map<String, Object> ctx) {
+            for (Link l : links) l.get(); // gives the store a chance to check included templates for changes
+            Object[] result = new Object[vars.length];
+            for (int i = 0; i < vars.length; ++i) {
+                Object o = ctx.get(vars[i]);
+                if (!isImmutable(o)) return null;
+                result[i] = o;
+            }
+            return result;
+        }
+    }
+
+    private static boolean isImmutable(Object o) {
+        return o == null || o instanceof String || o instanceof Boolean || o instanceof Character
+                || o instanceof Integer || o instanceof Long || o instanceof Double || o instanceof Float
+                || o instanceof Short || o instanceof Byte || o instanceof BigDecimal || o instanceof BigInteger
+                || o instanceof Enum || o instanceof DumbFrozenJson;
+    }
+
+    private static final class Key {
+        final DumbTemplate template;
+        final Object[] values;
+        private final int _hash;
+
+        Key(DumbTemplate template, Object[] values) {
+            this.template = template;
+            this.values = values;
+            _hash = System.identityHashCode(template) * 31 + Arrays.hashCode(values);
+        }
+
+        @Override public int hashCode() { return _hash; }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return template == k.template && Arrays.equals(values, k.values);
+        }
+    }
+
+    private static final class Fragment {
+        final Literal output;
+        final long expires; // System.nanoTime() after which this is stale, if there is a ttl
+
+        Fragment(Literal output, long expires) {
+            this.output = output;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.martiansoftware.dumbtemplates;
+
+/**
+ * A context value whose JSON has been computed in advance, via
+ * DumbTemplateStore.freezeJson().  The {$} directive writes the precomputed
+ * JSON instead of serializing the value again on every render, so this is
+ * useful for large values that never change (e.g., bootstrap data embedded
+ * in every page).
+ *
+ * Everywhere else (e.g., {= VAR} and conditional includes) a DumbFrozenJson
+ * behaves just like the value it holds.  The value must not be modified
+ * after it is frozen, or its JSON will be out of date.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public final class DumbFrozenJson {
+
+    private final Object _value;
+    private final String _json;
+
+    DumbFrozenJson(Object value, String json) {
+        _value = value;
+        _json = json;
+    }
+
+    /**
+     * @return the frozen value
+     */
+    public Object getValue() { return _value; }
+
+    /**
+     * @return the precomputed JSON representation of the value
+     */
+    public String getJson() { return _json; }
+
+    @Override public String toString() { return String.valueOf(_value); }
+}
@@ -1,12 +1,23 @@
 package com.martiansoftware.dumbtemplates;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Enumeration;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 /**
  * A DumbTemplateStore that loads templates from the classpath.  Templates
- * are loaded lazily upon first request.
+ * are loaded lazily upon first request, exactly once even if many threads
+ * request the same template at the same time.
  * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
@@ -43,16 +54,60 @@ public class DumbLazyClasspathTemplateStore extends DumbTemplateStore {
         if (result != null) return result;
 
         String storePath = Util.joinPath(Util.splitAndNormalizePath(new LinkedList<>(), templatePath));
+        return load(storePath, () -> loadResource(storePath));
+    }
+    
+    /**
+     * Lists every resource under this store's path, in directories or jar
+     * files anywhere on the classpath.
+     */
+    @Override protected Collection<String> templateNames() throws IOException {
+        Set<String> result = new TreeSet<>();
+        ClassLoader cl = this.getClass().getClassLoader();
+        if (cl == null) cl = ClassLoader.getSystemClassLoader();
+        Enumeration<URL> roots = cl.getResources(resourceName(_path));
+        while (roots.hasMoreElements()) {
+            URL root = roots.nextElement();
+            if ("file".equals(root.getProtocol())) {
+                try {
+                    result.addAll(Util.listFiles(Paths.get(root.toURI())));
+                } catch (URISyntaxException e) {
+                    throw new IOException("Cannot list templates in " + root, e);
+                }
+            } else if ("jar".equals(root.getProtocol())) {
+                JarURLConnection conn = (JarURLConnection) root.openConnection();
+                conn.setUseCaches(false);
+                String prefix = (conn.getEntryName() == null) ? "" : conn.getEntryName() + "/";
+                try (JarFile jar = conn.getJarFile()) {
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        JarEntry e = entries.nextElement();
+                        if (!e.isDirectory() && e.getName().startsWith(prefix)) result.add(e.getName().substring(prefix.length()));
+                    }
+                }
+            } else {
+                error("Cannot list templates in " + root);
+            }
+        }
+        return result;
+    }
+    
+    // resolves a path the same way Class.getResourceAsStream() does
+    private String resourceName(String path) {
+        if (path.startsWith("/")) return path.substring(1);
+        String cls = this.getClass().getName();
+        int i = cls.lastIndexOf('.');
+        return (i < 0) ? path : cls.substring(0, i).replace('.', '/') + "/" + path;
+    }
+    
+    private DumbTemplate loadResource(String storePath) {
         String fullPath = new StringBuilder(_path).append("/").append(storePath).toString();
-        
-        try {
-            InputStream in = this.getClass().getResourceAsStream(fullPath);
+        try (InputStream in = this.getClass().getResourceAsStream(fullPath)) {
             if (in == null) {
                 error("Template not found in classpath: " + fullPath);
                 return null;
             }
-            add(storePath, new InputStreamReader(in));
-            return super.get(storePath);
+            return newTemplate(storePath, Util.read(in));
         } catch (Exception e) {
             error("Exception while loading resource " + fullPath);
             exception(e);
@@ -3,19 +3,32 @@ package com.martiansoftware.dumbtemplates;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * A DumbTemplateStore that loads templates from the filesystem.  Templates
  * are loaded lazily upon first request.
  * 
+ * Lookups of loaded templates are served from memory without locking.  Each
+ * template's file is checked for changes at most once per revalidation
+ * interval (one second by default), by whichever thread first asks for it
+ * after the interval has elapsed; other threads keep using the current
+ * template in the meantime.
+ * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
 public class DumbLazyFileTemplateStore extends DumbTemplateStore {
     
     private final File _dir;
-    private final Map<String, FileTemplateEntry> _fileTemplates = new java.util.HashMap<>();
+    private final Map<String, FileTemplateEntry> _fileTemplates = new ConcurrentHashMap<>();
+    private volatile long _revalidationNanos = TimeUnit.SECONDS.toNanos(1);
     
     /**
      * Creates a new DumbLazyFileTemplateStore rooted at the specified
@@ -41,44 +54,113 @@ public class DumbLazyFileTemplateStore extends DumbTemplateStore {
         _dir = dir;
     }
     
-    @Override public synchronized DumbTemplate get(String templatePath) {
+    /**
+     * Sets how often each template's file is checked for changes.  A zero
+     * interval checks the file on every lookup.
+     * 
+     * @param interval the minimum time between checks of any one template file
+     * @param unit the unit of the interval
+     * @return this DumbLazyFileTemplateStore
+     */
+    public DumbLazyFileTemplateStore setRevalidationInterval(long interval, TimeUnit unit) {
+        _revalidationNanos = unit.toNanos(interval);
+        return this;
+    }
+    
+    @Override public DumbTemplate get(String templatePath) {
         DumbTemplate override = _templates.get(templatePath);
         if (override != null) return override; // override files via parent class's add() methods
 
+        return entry(templatePath).get();
+    }
+    
+    private FileTemplateEntry entry(String templatePath) {
+        DumbTemplateCache cache = getTemplateCache();
+        if (cache != null) return (FileTemplateEntry) cache.get(templatePath, p -> new FileTemplateEntry(p, file(p)));
         FileTemplateEntry result = _fileTemplates.get(templatePath);
-        if (result != null) return result.get();
-
+        return (result != null) ? result : _fileTemplates.computeIfAbsent(templatePath, p -> new FileTemplateEntry(p, file(p)));
+    }
+    
+    // links bind to the file's entry rather than its current template, so
+    // that included templates are still checked for changes
+    @Override protected Supplier<DumbTemplate> bind(String templatePath) {
+        DumbTemplate override = _templates.get(templatePath);
+        if (override != null) return () -> override;
+        FileTemplateEntry result = entry(templatePath);
+        return (result.get() == null) ? null : result;
+    }
+    
+    /**
+     * Lists every file under this store's directory.
+     */
+    @Override protected Collection<String> templateNames() throws IOException {
+        if (!_dir.isDirectory()) throw new IOException("Not a directory: " + _dir.getAbsolutePath());
+        return Util.listFiles(_dir.toPath());
+    }
+    
+    private File file(String templatePath) {
         File f = _dir;
         for (String part : Util.splitAndNormalizePath(new LinkedList<>(), templatePath)) {
             f = new File(f, part);
         }
-        
-        result = new FileTemplateEntry(templatePath, f);
-        _fileTemplates.put(templatePath, result);
-        return result.get();
+        return f;
     }
     
-    private class FileTemplateEntry {
+    private class FileTemplateEntry implements Supplier<DumbTemplate> {
         private long _lastModified;
         private final File _f;
-        private DumbTemplate _template;
+        private volatile DumbTemplate _template;
         private final String _templatePath;
+        private final AtomicLong _nextCheck;  // System.nanoTime() at which the file should next be checked
+        private final ReentrantLock _lock = new ReentrantLock(); // held while checking the file
         
         private FileTemplateEntry(String templatePath, File f) {
             _templatePath = templatePath;
             _f = f;
             _lastModified = Long.MIN_VALUE;
+            _nextCheck = new AtomicLong(System.nanoTime());
+        }
+        
+        @Override public DumbTemplate get() {
+            DumbTemplate result = _template;
+            long now = System.nanoTime();
+            long next = _nextCheck.get();
+            if (now - next < 0) return result;
+            
+            // only one thread needs to check an already-loaded template
+            if (result == null) return check(false);
+            return _nextCheck.compareAndSet(next, now + _revalidationNanos) ? check(true) : result;
+        }
+        
+        // checks the file and (re)loads the template if necessary.  unless forced,
+        // this is skipped if another thread checked while we waited for the lock.
+        // this does file I/O while holding the lock, so it's a ReentrantLock rather
+        // than a monitor, which would pin a waiting virtual thread to its carrier.
+        private DumbTemplate check(boolean force) {
+            _lock.lock();
+            try {
+                return checkLocked(force);
+            } finally {
+                _lock.unlock();
+            }
         }
         
-        public DumbTemplate get() {
+        private DumbTemplate checkLocked(boolean force) {
+            long now = System.nanoTime();
+            if (!force && now - _nextCheck.get() < 0) return _template;
             if (_f.canRead()) {
                 long mod = _f.lastModified();
-                if (_template == null || _f.lastModified() != _lastModified) {
+                if (_template == null || mod != _lastModified) {
                     try {
                         log("Loading template " + _templatePath + " from " + _f.getAbsolutePath());
-                        String s = new String(Files.readAllBytes(_f.toPath()));
-                        _template = new DumbTemplate(_templatePath, DumbLazyFileTemplateStore.this, s);
-                        _lastModified = mod;
+                        long start = System.nanoTime();
+                        DumbTemplate t = newTemplate(_templatePath, Files.readAllBytes(_f.toPath()));
+                        _lastModified = mod; // don't retry a rejected template until the file changes again
+                        if (tryRegister(t)) {
+                            loaded(_templatePath, System.nanoTime() - start, _template != null);
+                            _template = t;
+                            invalidate(_templatePath);
+                        }
                     } catch (IOException e) {
                         exception(e);
                         return null;
@@ -87,6 +169,7 @@ public class DumbLazyFileTemplateStore extends DumbTemplateStore {
             } else {
                 error("Template not found in filesystem: " + _f.getAbsolutePath());
             }
+            _nextCheck.set(now + _revalidationNanos);
             return _template;
         }
     }
@@ -0,0 +1,60 @@
+package com.martiansoftware.dumbtemplates;
+
+/**
+ * Receives measurements from a DumbTemplateStore, if one is provided via
+ * DumbTemplateStore.setMetrics().  DumbTemplateMetrics is a ready-made
+ * implementation; implement this yourself to feed your own metrics system.
+ *
+ * These methods are called on the rendering thread, often several times per
+ * render, so they should be fast and must be thread-safe.  All do nothing
+ * by default.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public interface DumbMetrics {
+
+    /**
+     * Called after a template has been rendered, whether on its own or via
+     * an #include or #inside directive.
+     *
+     * @param templateName the template that was rendered
+     * @param nanos how long it took, including any templates it includes
+     */
+    default void rendered(String templateName, long nanos) {}
+
+    /**
+     * Called after a template has been rendered on its own (i.e., not
+     * included in another template).
+     *
+     * @param templateName the template that was rendered
+     * @param size the size of the output: chars for String and PrintWriter
+     * output, or bytes for OutputStream and ByteBuffer output
+     */
+    default void produced(String templateName, long size) {}
+
+    /**
+     * Called each time a template's #include directive is rendered (i.e., its
+     * condition, if any, is met).
+     *
+     * @param templateName the template containing the directive
+     * @param includedName the (resolved) name of the included template
+     */
+    default void included(String templateName, String includedName) {}
+
+    /**
+     * Called each time a template refers to a variable that is not in the context.
+     *
+     * @param templateName the template that refers to the variable
+     * @param varName the name of the missing variable
+     */
+    default void missingVariable(String templateName, String varName) {}
+
+    /**
+     * Called after a template has been loaded (or added) and parsed.
+     *
+     * @param templateName the template that was loaded
+     * @param nanos how long it took to read and parse
+     * @param reload true if the template replaced an earlier version
+     */
+    default void loaded(String templateName, long nanos, boolean reload) {}
+}
@@ -0,0 +1,91 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The outcome of DumbTemplateStore.preload(): how long each template took
+ * to load and parse, and which ones failed.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public final class DumbPreloadReport {
+
+    private final List<Result> _results;
+    private final long _elapsedNanos;
+
+    DumbPreloadReport(List<Result> results, long elapsedNanos) {
+        _results = Collections.unmodifiableList(results);
+        _elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * The outcome of preloading a single template.
+     */
+    public static final class Result {
+        private final String _name;
+        private final long _nanos;
+        private final boolean _loaded;
+        private final List<String> _errors;
+        private final Exception _exception;
+
+        Result(String name, long nanos, boolean loaded, List<String> errors, Exception exception) {
+            _name = name;
+            _nanos = nanos;
+            _loaded = loaded;
+            _errors = Collections.unmodifiableList(errors);
+            _exception = exception;
+        }
+
+        /** @return the name of the template */
+        public String getName() { return _name; }
+
+        /** @return the time taken to load and parse the template */
+        public long getNanos() { return _nanos; }
+
+        /** @return true if the template was loaded successfully */
+        public boolean isLoaded() { return _loaded; }
+
+        /** @return any errors reported by the store while loading this template */
+        public List<String> getErrors() { return _errors; }
+
+        /** @return the first exception encountered while loading this template, or null if none */
+        public Exception getException() { return _exception; }
+
+        @Override public String toString() {
+            StringBuilder s = new StringBuilder(_name).append(": ");
+            if (_loaded) {
+                s.append(String.format("%.3f ms", _nanos / 1e6));
+            } else {
+                s.append("FAILED");
+                _errors.forEach(e -> s.append(" [").append(e).append(']'));
+                if (_exception != null) s.append(" [").append(_exception).append(']');
+            }
+            return s.toString();
+        }
+    }
+
+    /** @return the results for every template, in no particular order */
+    public List<Result> getResults() { return _results; }
+
+    /** @return the results for templates that could not be loaded */
+    public List<Result> getFailures() {
+        return _results.stream().filter(r -> !r.isLoaded()).collect(Collectors.toList());
+    }
+
+    /** @return true if every template was loaded */
+    public boolean isSuccessful() { return _results.stream().allMatch(Result::isLoaded); }
+
+    /** @return the wall-clock time taken by the entire preload */
+    public long getElapsedNanos() { return _elapsedNanos; }
+
+    @Override public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("Preloaded %d templates (%d failed) in %d ms%n",
+                                _results.size(), getFailures().size(), TimeUnit.NANOSECONDS.toMillis(_elapsedNanos)));
+        _results.forEach(r -> s.append("  ").append(r).append(String.format("%n")));
+        return s.toString();
+    }
+}
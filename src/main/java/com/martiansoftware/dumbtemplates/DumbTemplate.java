@@ -1,30 +1,64 @@
 package com.martiansoftware.dumbtemplates;
 
-import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A very simple text template.
  * 
  * Several directives are supported as described in accompanying documentation.
- * Upon creation, the template is split around these directives and converted
- * to a list of individual render steps.  Template processing accepts a
+ * Upon creation, the template is split around these directives and compiled
+ * into a flat Program of render steps.  Template processing accepts a
  * Map<String, Object> holding variables that may be used.
  * 
+ * On its first render the Program is folded: the output of templates that
+ * are #included unconditionally and contain no directives of their own is
+ * copied into it, adjacent text is merged, and steps that do nothing are
+ * dropped, so that a tree of static includes is written all at once.  The
+ * folded Program is rebuilt whenever any template copied into it changes.
+ * It is not used while the store has DumbMetrics or a DumbFragmentCache,
+ * both of which count each #include.
+ * 
+ * Rendering never flushes the output, and holds no locks while writing to
+ * it other than those of the output itself (e.g., a PrintWriter's).  The
+ * store's fragment cache and template cache, if enabled, take brief locks
+ * of their own to look things up, but none is held while rendering or
+ * reading files, which suits virtual threads.
+ * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
 public class DumbTemplate {
     
-    private final List<Renderer> _renderers;      // when run in order, this list produces the template output
+    // the largest buffer that renderAll() keeps for reuse if the store does not pool buffers
+    private static final int BATCH_MAX_CHARS = 1024 * 1024;
+    
+    private final Program _program;               // when run in order, these steps produce the template output
     private final DumbTemplateStore _store;       // used to lookup includes and insides
     private final String _inside;                 // name of the template this is inside of (or null if none)
     private final String _name;                   // name of this template
+    private final int _includes;                  // number of #include directives
+    private Link _insideLink;                     // the store's link to _inside, looked up on first use
+    private volatile Folded _folded;              // _program with static includes inlined, built on first use
+    private volatile int _sizeEstimate;           // moving average of the length of recent render(Map) results
     
     /**
      * Creates a new DumbTemplate.  You should probably be calling DumbTemplateStore.add()
@@ -35,35 +69,45 @@ public class DumbTemplate {
      * @param templateDefinition the actual template text (including directives)
      */
     public DumbTemplate(String templateName, DumbTemplateStore store, String templateDefinition) {
+        this(templateName, store, compile(templateName, templateDefinition));
+    }
+    
+    // creates a template from an already-compiled Program (e.g., from a DumbBundleTemplateStore)
+    DumbTemplate(String templateName, DumbTemplateStore store, Program program) {
         _name = templateName;
         _store = (store == null ? new DumbTemplateStore() : store);
-        Map<Integer, MatchResult> matches = new java.util.TreeMap<>();
-        MatchResult inside = null;
+        _program = program;
         
-        // first find all matches of each type and sort by start index
-        for (Directive t : Directive.values()) {
-            Matcher m = t.getMatcher();
-            m.reset(templateDefinition);
-            while (m.find()) {
-                MatchResult mr = new MatchResult(t, m);
-                if (t == Directive.INSIDE && inside == null) inside = mr;
-                matches.put(m.start(), mr);
+        // until something has been rendered, guess the static text plus a little for each directive that writes something
+        String inside = null;
+        int estimate = 0, includes = 0;
+        for (int i = 0; i < _program.ops.length; ++i) {
+            switch (_program.ops[i]) {
+                case Program.LITERAL: estimate += ((Literal) _program.args[i]).len; break;
+                case Program.INCLUDE: ++includes; estimate += 16; break;
+                case Program.VAR:
+                case Program.RAW_VAR:
+                case Program.JSON: estimate += 16; break;
+                case Program.INSIDE: if (inside == null) inside = (String) _program.args[i]; break;
+                default: break;
             }
         }
-        
-        // then assemble a list of lambdas to output each part of the template
-        List<Renderer> r = new java.util.LinkedList<>();        
+        _inside = inside;
+        _sizeEstimate = estimate;
+        _includes = includes;
+    }
+    
+    // compiles each part of the template into a single step
+    private static Program compile(String templateName, String templateDefinition) {
+        Program.Builder p = new Program.Builder(templateDefinition);
         int upTo = 0;
-        for(MatchResult mr : matches.values()) {
-            if (mr.start > upTo ) r.add(rawRenderer(templateDefinition, upTo, mr.start));
-            r.add(getRenderer(mr));
-            upTo = mr.end;
+        for (Tokenizer.Token t : Tokenizer.tokenize(templateDefinition)) {
+            if (t.start > upTo) p.literal(upTo, t.start);
+            compile(templateName, t, p);
+            upTo = t.end;
         }
-        if (upTo < templateDefinition.length()) r.add(rawRenderer(templateDefinition, upTo, templateDefinition.length()));
-        r.add((ctx, out) -> out.flush());
-        
-        _renderers = Collections.unmodifiableList(new java.util.ArrayList<>(r));
-        _inside = (inside == null ? null : Util.resolvePath(_name, inside.group[Directive.INSIDE_TEMPLATE]));
+        if (upTo < templateDefinition.length()) p.literal(upTo, templateDefinition.length());
+        return p.build();
     }
 
     /**
@@ -72,7 +116,80 @@ public class DumbTemplate {
      * @param ctx a Map containing variables that can be referenced via this DumbTemplate's directives
      * @param out the PrintWriter that should receive the rendered output
      */
-    public void render(Map<String, Object> ctx, PrintWriter out) { render(ctx, out, true); }
+    public void render(Map<String, Object> ctx, PrintWriter out) { render(ctx, new Sink.WriterSink(out)); }
+    
+    /**
+     * Renders this DumbTemplate directly to the specified Writer.  Unlike
+     * render(Map, PrintWriter), this reports errors from the Writer, and
+     * adds no locking of its own, so an unsynchronized Writer is never
+     * locked during rendering.  Does not flush.
+     * 
+     * @param ctx a Map containing variables that can be referenced via this DumbTemplate's directives
+     * @param out the Writer that should receive the rendered output
+     * @throws IOException if the Writer throws one
+     */
+    public void render(Map<String, Object> ctx, Writer out) throws IOException {
+        try {
+            render(ctx, new Sink.WriterSink(out));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Renders this DumbTemplate directly to the specified OutputStream as UTF-8.
+     * Static template text is written as pre-encoded bytes; only variables
+     * and JSON are encoded while rendering.  Output is buffered internally
+     * and written to the stream before this method returns, but the stream
+     * itself is not flushed.
+     * 
+     * @param ctx a Map containing variables that can be referenced via this DumbTemplate's directives
+     * @param out the OutputStream that should receive the rendered output
+     * @throws IOException if the OutputStream throws one
+     */
+    public void render(Map<String, Object> ctx, OutputStream out) throws IOException {
+        BufferPool pool = _store.getBufferPool();
+        byte[] buf = (pool == null) ? new byte[BufferPool.BYTE_BUFFER_SIZE] : pool.bytes();
+        try {
+            render(ctx, new Sink.OutputStreamSink(out, buf));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (pool != null) pool.release(buf);
+        }
+    }
+    
+    /**
+     * Renders this DumbTemplate directly into the specified ByteBuffer as UTF-8,
+     * starting at its current position.  Static template text is copied as
+     * pre-encoded bytes; only variables and JSON are encoded while rendering.
+     * 
+     * @param ctx a Map containing variables that can be referenced via this DumbTemplate's directives
+     * @param out the ByteBuffer that should receive the rendered output
+     * @throws java.nio.BufferOverflowException if the output does not fit in the buffer
+     */
+    public void render(Map<String, Object> ctx, ByteBuffer out) { render(ctx, new Sink.ByteBufferSink(out)); }
+    
+    /**
+     * Renders this DumbTemplate in chunks of at most the specified size,
+     * passing each to the consumer as soon as it is full, so that output of
+     * any size can be produced in a fixed amount of memory.  The consumer is
+     * called on the rendering thread, and rendering waits for it to return,
+     * so a consumer that blocks until the previous chunk has been sent (e.g.
+     * via SubmissionPublisher.submit() on Java 9 and later) throttles the
+     * render to the pace of its downstream.
+     * 
+     * The same CharBuffer is reused for every chunk; it is only valid until
+     * the consumer returns, so copy anything that must be kept.
+     * 
+     * @param ctx a Map containing variables that can be referenced via this DumbTemplate's directives
+     * @param chunkSize the size of the chunks, in chars
+     * @param consumer receives each chunk in order
+     * @throws IllegalArgumentException if chunkSize is not positive
+     */
+    public void render(Map<String, Object> ctx, int chunkSize, Consumer<? super CharBuffer> consumer) {
+        render(ctx, new Sink.ChunkSink(chunkSize, consumer));
+    }
     
     /**
      * Renders this DumbTemplate to a String.
@@ -80,7 +197,74 @@ public class DumbTemplate {
      * @param ctx a Map containing variables that can be referenced via this DumbTemplate's directives
      * @return the rendered output
      */
-    public String render(Map<String, Object> ctx) { return render(ctx, true); }
+    public String render(Map<String, Object> ctx) { return render(ctx, _store.getBufferPool()); }
+    
+    /**
+     * Renders this DumbTemplate once for each of the specified contexts, in
+     * parallel on the common ForkJoinPool, and passes each result to the sink.
+     * 
+     * @param contexts the contexts to render
+     * @param ordered if true, the sink receives results one at a time in the
+     * order of the contexts; if false, it receives them in whatever order they
+     * are finished, possibly from several threads at once
+     * @param sink receives the rendered output
+     */
+    public void renderAll(Iterable<? extends Map<String, Object>> contexts, boolean ordered, Consumer<? super String> sink) {
+        renderAll(StreamSupport.stream(contexts.spliterator(), false), ordered, sink);
+    }
+    
+    /**
+     * Renders this DumbTemplate once for each of the specified contexts, in
+     * parallel on the common ForkJoinPool, and passes each result to the sink.
+     * 
+     * @param contexts the contexts to render
+     * @param ordered if true, the sink receives results one at a time in the
+     * order of the contexts; if false, it receives them in whatever order they
+     * are finished, possibly from several threads at once
+     * @param sink receives the rendered output
+     */
+    public void renderAll(Stream<? extends Map<String, Object>> contexts, boolean ordered, Consumer<? super String> sink) {
+        renderAll(contexts, ordered, sink, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Renders this DumbTemplate once for each of the specified contexts, in
+     * parallel on the specified ForkJoinPool, and passes each result to the sink.
+     * Each worker reuses its render buffer from one context to the next (from
+     * the store's buffer pool, if pooling is enabled).
+     * 
+     * @param contexts the contexts to render
+     * @param ordered if true, the sink receives results one at a time in the
+     * order of the contexts; if false, it receives them in whatever order they
+     * are finished, possibly from several threads at once
+     * @param sink receives the rendered output
+     * @param pool the pool on which to render
+     */
+    public void renderAll(Stream<? extends Map<String, Object>> contexts, boolean ordered, Consumer<? super String> sink, ForkJoinPool pool) {
+        BufferPool p = _store.getBufferPool();
+        BufferPool buffers = (p != null) ? p : new BufferPool(BATCH_MAX_CHARS);
+        Stream<String> results = contexts.parallel().map(ctx -> render(ctx, buffers));
+        if (ordered) {
+            pool.submit(() -> results.forEachOrdered(sink)).join();
+        } else {
+            pool.submit(() -> results.unordered().forEach(sink)).join();
+        }
+    }
+    
+    private String render(Map<String, Object> ctx, BufferPool pool) {
+        // size the buffer from recent renders (plus some slack) so it rarely has to grow
+        int estimate = _sizeEstimate;
+        int capacity = estimate + (estimate >> 3) + 16;
+        StringBuilder sb = (pool == null) ? new StringBuilder(capacity) : pool.chars(Math.min(capacity, pool.maxChars()));
+        try {
+            render(ctx, new Sink.StringSink(sb));
+            String result = sb.toString();
+            _sizeEstimate = estimate + ((result.length() - estimate) >> 3); // racy updates are harmless
+            return result;
+        } finally {
+            if (pool != null) pool.release(sb);
+        }
+    }
     
     /**
      * Renders this DumbTemplate to a String with no context at all
@@ -89,107 +273,334 @@ public class DumbTemplate {
     public String render() { return render(null); }
     
     public String getName() { return _name; }
+    
+    // the compiled template, for writing to a bundle
+    Program getProgram() { return _program; }
+    
+    /**
+     * A template's Program with unconditional #includes of static templates
+     * inlined, adjacent literals merged, and INSIDE steps removed.
+     */
+    private static final class Folded {
+        final Program program;
+        final int includes;             // the number of INCLUDE steps left
+        final Literal text;             // the entire output if the template is static, otherwise null
+        final Link[] links;             // the links to every template inlined, directly or indirectly...
+        final DumbTemplate[] targets;   // ...and the templates they led to at the time
+        
+        Folded(Program program, int includes, Literal text, List<Link> links, List<DumbTemplate> targets) {
+            this.program = program;
+            this.includes = includes;
+            this.text = text;
+            this.links = links.toArray(new Link[links.size()]);
+            this.targets = targets.toArray(new DumbTemplate[targets.size()]);
+        }
+        
+        // true unless an inlined template has since been reloaded, replaced or removed
+        boolean isCurrent() {
+            for (int i = 0; i < links.length; ++i) {
+                if (links[i].get() != targets[i]) return false;
+            }
+            return true;
+        }
+    }
+    
+    // returns the folded Program, refolding it first if it is out of date
+    private Folded folded() {
+        Folded f = _folded;
+        if (f == null || !f.isCurrent()) _folded = f = fold(); // racy updates are harmless
+        return f;
+    }
+    
+    private Folded fold() {
+        Program.Builder p = new Program.Builder();
+        List<Literal> text = new ArrayList<>();     // literals not yet added to p
+        List<Link> links = new ArrayList<>();
+        List<DumbTemplate> targets = new ArrayList<>();
+        boolean isStatic = (_inside == null);
+        int includes = 0;
+        final byte[] ops = _program.ops;
+        final Object[] args = _program.args;
+        for (int i = 0; i < ops.length; ++i) {
+            switch (ops[i]) {
+                case Program.LITERAL:
+                    if (((Literal) args[i]).len > 0) text.add((Literal) args[i]);
+                    continue;
+                case Program.INSIDE:
+                    continue; // render() handles INSIDE
+                case Program.INCLUDE:
+                    Program.Include inc = (Program.Include) args[i];
+                    if (inc.var == null) {
+                        Link l = link(inc);
+                        DumbTemplate d = l.get();
+                        Folded df = (d == null) ? null : d.folded();
+                        if (df != null && df.text != null) {
+                            if (df.text.len > 0) text.add(df.text);
+                            links.add(l);
+                            targets.add(d);
+                            links.addAll(Arrays.asList(df.links));
+                            targets.addAll(Arrays.asList(df.targets));
+                            continue;
+                        }
+                    }
+                    ++includes;
+                    break;
+                default: break;
+            }
+            if (!text.isEmpty()) p.add(Program.LITERAL, Literal.concat(text));
+            text.clear();
+            p.add(ops[i], args[i]);
+            isStatic = false;
+        }
+        Literal all = text.isEmpty() ? new Literal("") : Literal.concat(text);
+        if (all.len > 0) p.add(Program.LITERAL, all);
+        return new Folded(p.build(), includes, isStatic ? all : null, links, targets);
+    }
+    
+    /**
+     * Returns the names of the variables this template refers to directly
+     * (i.e., not including those in the templates it includes), or null if
+     * it inserts the entire context via {$}.
+     */
+    java.util.Set<String> getVariables() {
+        java.util.Set<String> result = new java.util.LinkedHashSet<>();
+        for (int i = 0; i < _program.ops.length; ++i) {
+            switch (_program.ops[i]) {
+                case Program.VAR:
+                case Program.RAW_VAR:
+                    result.add((String) _program.args[i]);
+                    break;
+                case Program.JSON:
+                    if (_program.args[i] == null) return null;
+                    result.add((String) _program.args[i]);
+                    break;
+                case Program.INCLUDE:
+                    Program.Include inc = (Program.Include) _program.args[i];
+                    if (inc.var != null) result.add(inc.var);
+                    break;
+                default: break;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the expected length of this template's output when rendered to
+     * a String, based upon an exponentially weighted moving average of recent
+     * renders (or, before the first render, upon the length of its static
+     * text).  render(Map) uses this to size its buffer.
+     * 
+     * @return the expected length, in chars, of the rendered output
+     */
+    public int getOutputSizeEstimate() { return _sizeEstimate; }
+    
+    /**
+     * Returns the (resolved) names of the templates this one refers to via
+     * #include and #inside directives.
+     * 
+     * @return the names of the templates this one depends upon
+     */
+    public java.util.Set<String> getDependencies() {
+        java.util.Set<String> result = new java.util.LinkedHashSet<>();
+        for (int i = 0; i < _program.ops.length; ++i) {
+            if (_program.ops[i] == Program.INCLUDE) result.add(((Program.Include) _program.args[i]).template);
+        }
+        if (_inside != null) result.add(_inside);
+        return result;
+    }
    
-    private void render(Map<String, Object> ctx, PrintWriter out, boolean allowInside) {
+    private void render(Map<String, Object> ctx, Sink out) {
+        render(ctx, out, true);
+        out.finish();
+        DumbMetrics m = _store.getMetrics();
+        if (m != null) m.produced(_name, out.written());
+    }
+    
+    private void render(Map<String, Object> ctx, Sink out, boolean allowInside) {
+        DumbMetrics m = _store.getMetrics();
+        if (m == null) {
+            renderUnmeasured(ctx, out, allowInside);
+        } else {
+            long start = System.nanoTime();
+            try {
+                renderUnmeasured(ctx, out, allowInside);
+            } finally {
+                m.rendered(_name, System.nanoTime() - start);
+            }
+        }
+    }
+    
+    private void renderUnmeasured(Map<String, Object> ctx, Sink out, boolean allowInside) {
         Map<String, Object> nctx = ((ctx == null) ? Collections.EMPTY_MAP : ctx);
         if (allowInside && _inside != null) {
-            DumbTemplate d = _store.get(_inside);
+            Link link = _insideLink;
+            if (link == null) _insideLink = link = _store.link(_inside);
+            DumbTemplate d = link.get();
             if (d != null) {
-                nctx.put("content", render(nctx, false));
-                d.render(nctx, out);
+                // the outer template streams this one wherever it uses "content"
+                d.render(new InsideContext(nctx, new InsideContext.Content(this, nctx)), out, true);
                 return;
             }
         }
-        _renderers.forEach((r) -> r.render(nctx, out));
+        run(nctx, out);
     }
     
-    private String render(Map<String, Object> ctx, boolean allowInside) {
-        StringWriter s = new StringWriter();
-        PrintWriter p = new PrintWriter(s);
-        render(ctx, p, allowInside);
-        return s.toString();
+    // renders this template for an #include directive
+    void renderIncluded(Map<String, Object> ctx, Sink out) { render(ctx, out, true); }
+    
+    // renders this template as the content of an #inside directive
+    void renderInner(Map<String, Object> ctx, Sink out) { render(ctx, out, false); }
+    
+    // executes each step of the compiled program in order
+    private void run(Map<String, Object> ctx, Sink out) {
+        Program program = _program;
+        int includes = _includes;
+        if (_store.getMetrics() == null && _store.getFragmentCache() == null) {
+            Folded f = folded();
+            program = f.program;
+            includes = f.includes;
+        }
+        Executor executor = _store.getIncludeExecutor();
+        if (executor != null && includes > 1 && !out.serial()) {
+            runParallel(ctx, out, executor, program);
+            return;
+        }
+        final byte[] ops = program.ops;
+        final Object[] args = program.args;
+        for (int i = 0; i < ops.length; ++i) {
+            switch (ops[i]) {
+                case Program.LITERAL: out.write((Literal) args[i]); break;
+                case Program.VAR: var(ctx, (String) args[i], true, out); break;
+                case Program.RAW_VAR: var(ctx, (String) args[i], false, out); break;
+                case Program.JSON: json(ctx, (String) args[i], out); break;
+                case Program.INCLUDE: include(ctx, (Program.Include) args[i], out); break;
+                default: break; // INSIDE is handled by render() before the program runs
+            }
+        }
+    }
+    
+    // like run(), but first starts rendering each #include on the executor, then
+    // writes their output in order as it becomes available
+    private void runParallel(Map<String, Object> ctx, Sink out, Executor executor, Program program) {
+        final byte[] ops = program.ops;
+        final Object[] args = program.args;
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[ops.length];
+        for (int i = 0; i < ops.length; ++i) {
+            if (ops[i] != Program.INCLUDE) continue;
+            Program.Include inc = (Program.Include) args[i];
+            if (!inc.shouldInclude(ctx)) continue;
+            parts[i] = CompletableFuture.supplyAsync(() -> {
+                // includes within this one are rendered serially, so executor threads never wait on each other
+                Sink s = new Sink.StringSink(new StringBuilder(), true);
+                insert(ctx, inc, s);
+                return s.toString();
+            }, executor);
+        }
+        for (int i = 0; i < ops.length; ++i) {
+            switch (ops[i]) {
+                case Program.LITERAL: out.write((Literal) args[i]); break;
+                case Program.VAR: var(ctx, (String) args[i], true, out); break;
+                case Program.RAW_VAR: var(ctx, (String) args[i], false, out); break;
+                case Program.JSON: json(ctx, (String) args[i], out); break;
+                case Program.INCLUDE:
+                    if (parts[i] != null) out.write((String) join(parts[i]));
+                    break;
+                default: break;
+            }
+        }
+    }
+    
+    private static Object join(CompletableFuture<?> part) {
+        try {
+            return part.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+    
+    private void include(Map<String, Object> ctx, Program.Include inc, Sink out) {
+        if (inc.shouldInclude(ctx)) insert(ctx, inc, out);
+    }
+    
+    // renders an #include whose condition has been met
+    private void insert(Map<String, Object> ctx, Program.Include inc, Sink out) {
+        DumbMetrics m = _store.getMetrics();
+        if (m != null) m.included(_name, inc.template);
+        DumbTemplate d = link(inc).get();
+        if (d == null) {
+            _store.missingTemplate(_name, inc.template);
+        } else {
+            DumbFragmentCache cache = _store.getFragmentCache();
+            if (cache == null) {
+                d.render(ctx, out, true);
+            } else {
+                cache.render(d, ctx, out);
+            }
+        }
+    }
+    
+    private Link link(Program.Include inc) {
+        Link result = inc.link;
+        if (result == null) inc.link = result = _store.link(inc.template);
+        return result;
+    }
+    
+    private void var(Map<String, Object> ctx, String var, boolean escape, Sink out) {
+        Object o = ctx.get(var);
+        if (o == null) {
+            _store.missingVariable(_name, var);
+        } else if (o instanceof InsideContext.Content) {
+            if (escape) {
+                Sink e = new Sink.EscapingSink(out);
+                ((InsideContext.Content) o).render(e);
+                e.finish();
+            } else {
+                ((InsideContext.Content) o).render(out);
+            }
+        } else if (escape) {
+            Util.escape(o, out);
+        } else {
+            out.write(o.toString());
+        }
     }
     
-    // just renders a (raw) portion of a template.  this is for the template
-    // parts in between dumplate directives.
-    private Renderer rawRenderer(String s, int start, int end) {
-        return (ctx, out) ->  out.print(s.substring(start, end));
+    private void json(Map<String, Object> ctx, String var, Sink out) {
+        Json json = _store.getJson();
+        if (var == null) {
+            json.write(ctx, out);
+        } else {
+            Object o = InsideContext.resolve(ctx.get(var));
+            if (o == null) _store.missingVariable(_name, var);
+            json.write(o, out);
+        }
     }
     
-    final Renderer getRenderer(MatchResult mr) {
-        switch(mr.t) {
+    private static void compile(String templateName, Tokenizer.Token t, Program.Builder p) {
+        switch(t.t) {
             case INCLUDE:
-                String resolvedTemplate = Util.resolvePath(_name, mr.group[Directive.INCLUDE_TEMPLATE]);
-                return (ctx, out) -> {
-                    boolean shouldInclude = true;
-                    if (mr.group[Directive.INCLUDE_IFUNLESS] != null) { // is this more than just a dumb include?
-                        boolean invertResult = "unless".equals(mr.group[Directive.INCLUDE_IFUNLESS]);
-                        String var = mr.group[Directive.INCLUDE_CONDVAR];
-                        String val = mr.group[Directive.INCLUDE_CONDVALUE];
-                        if (val == null) {
-                            shouldInclude = Util.isTruthy(ctx.get(var));
-                        } else {
-                            Object o = ctx.get(var); 
-                            String v = (o == null) ? "" : o.toString();
-                            shouldInclude = val.equals(v);
-                        }
-                        if (invertResult) shouldInclude = !shouldInclude;
-                    }
-                    if (shouldInclude) {
-                        DumbTemplate d = _store.get(resolvedTemplate);
-                        if (d == null) {
-                            _store.warning("template '" + _name + "', cannot find template '" + resolvedTemplate + "'");
-                        } else {
-                            d.render(ctx, out);
-                        }
-                    }
-                };
+                p.add(Program.INCLUDE, new Program.Include(Util.resolvePath(templateName, t.group[Directive.INCLUDE_TEMPLATE]),
+                                                            "unless".equals(t.group[Directive.INCLUDE_IFUNLESS]),
+                                                            t.group[Directive.INCLUDE_CONDVAR],
+                                                            t.group[Directive.INCLUDE_CONDVALUE]));
+                break;
             case VAR:
-                return (ctx, out) -> {
-                    if (ctx == null) return;
-                    Object o = ctx.get(mr.group[Directive.VAR_NAME]);
-                    if (o == null) {
-                        _store.warning("variable not defined: " + mr.group[Directive.VAR_NAME]);
-                    } else {
-                        out.format("%s", "!".equals(mr.group[Directive.VAR_ESCAPEHINT]) ? o : Util.escape(o));
-                    }
-                };
+                p.add("!".equals(t.group[Directive.VAR_ESCAPEHINT]) ? Program.RAW_VAR : Program.VAR, t.group[Directive.VAR_NAME]);
+                break;
             case JSON:
-                String var = (mr.group.length > Directive.JSON_NAME) ? mr.group[Directive.JSON_NAME] : null;
-                return (ctx, out) -> {
-                    if (ctx == null) return;
-                    Gson gson = _store.getGson();
-                    if (var == null) {
-                        gson.toJson(ctx, out);
-                    } else {
-                        Object o = ctx.get(var);
-                        if (o == null) _store.warning("variable not defined: " + mr.group[Directive.VAR_NAME]);
-                        gson.toJson(o, out);
-                    }
-                };
+                p.add(Program.JSON, t.group[Directive.JSON_NAME]);
+                break;
             case INSIDE:
-                return (ctc, out) -> {};
+                p.add(Program.INSIDE, Util.resolvePath(templateName, t.group[Directive.INSIDE_TEMPLATE]));
+                break;
         }
-        return null;
     }
-      
-    private interface Renderer { void render(Map<String, Object> ctx, PrintWriter out); }
 
-    private class MatchResult {
-        public final Directive t;
-        public final int start, end;
-        public final String[] group;
-
-        public MatchResult(Directive t, Matcher m) {
-            this.t = t;
-            this.start = m.start();
-            this.end = m.end();
-            this.group = new String[m.groupCount() + 1];
-            for (int i = 0; i <= m.groupCount(); ++i) group[i] = m.group(i);
-        }
-        
-    }    
-        
+    // these regular expressions are the reference definition of the template
+    // grammar.  templates are actually parsed by the equivalent (but much
+    // faster) hand-written Tokenizer.
     private static final String SYMBOLGROUP = "([^}\\s]+)";
     enum Directive {
         // {# include TEMPLATE }
@@ -226,9 +637,10 @@ public class DumbTemplate {
         public static final int VAR_ESCAPEHINT = 1;
         public static final int VAR_NAME = 2;
         public static final int JSON_NAME = 1;
-        private final Matcher m;
-        private Directive(String pattern) { m = Pattern.compile(pattern).matcher(""); }
-        public Matcher getMatcher() { return m; }        
+        private final Pattern p;
+        private Directive(String pattern) { p = Pattern.compile(pattern); }
+        // returns a new Matcher each time, as Matchers are not thread-safe
+        public Matcher getMatcher() { return p.matcher(""); }
     }
     
 }
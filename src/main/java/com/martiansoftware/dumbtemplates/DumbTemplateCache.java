@@ -0,0 +1,198 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many loaded templates a DumbLazyFileTemplateStore or
+ * DumbLazyClasspathTemplateStore keeps in memory, for stores with more
+ * templates than will comfortably fit.  Enable it with
+ * DumbTemplateStore.setTemplateCache().
+ *
+ * When the cache is full, the least recently used template is discarded,
+ * and is loaded again if it is needed later.  Optionally, templates can be
+ * held via soft references, so that the garbage collector may also discard
+ * them when memory runs low; #include and #inside directives then refer to
+ * them softly too, so this applies to templates that are only ever included
+ * as well.  "Template not found" results are cached just like templates, so
+ * asking again and again for a template that doesn't exist doesn't look for
+ * it every time: until the cached result is discarded, the file store looks
+ * for it only once per revalidation interval, and the classpath store not
+ * at all.
+ *
+ * Rendering a template via an #include or #inside directive does not count
+ * as using it (so that renders don't contend for the cache), so a template
+ * that is only ever included is discarded now and then and loaded again.
+ * Templates added via add() are never discarded.
+ *
+ * A discarded template is forgotten entirely, whether it was discarded to
+ * make room or by the garbage collector: its place in the dependency graph
+ * and its rate-limited warnings are dropped along with it, so the store's
+ * memory stays bounded however many templates pass through it.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public final class DumbTemplateCache {
+
+    private final DumbTemplateStore _store;
+    private final int _maxTemplates;
+    private final boolean _soft;
+    private final Map<String, Object> _entries;   // Supplier<DumbTemplate>s, or SoftEntries holding them; guarded by itself
+    private final ReferenceQueue<Supplier<DumbTemplate>> _collected = new ReferenceQueue<>(); // SoftEntries cleared by the garbage collector
+    private final List<String> _evicted = new ArrayList<>(); // guarded by _entries
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+
+    DumbTemplateCache(DumbTemplateStore store, int maxTemplates, boolean softReferences) {
+        _store = store;
+        _maxTemplates = maxTemplates;
+        _soft = softReferences;
+        _entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                if (size() <= _maxTemplates) return false;
+                _evicted.add(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /** @return the number of lookups answered from the cache, including "not found" answers */
+    public long getHits() { return _hits.sum(); }
+
+    /** @return the number of lookups that had to load a template (or look for a missing one) */
+    public long getMisses() { return _misses.sum(); }
+
+    /** @return the number of templates discarded to make room for others, or by the garbage collector */
+    public long getEvictions() { return _evictions.sum(); }
+
+    /** @return the number of templates (and "not found" results) currently cached */
+    public int size() {
+        synchronized (_entries) { return _entries.size(); }
+    }
+
+    @Override public String toString() {
+        return String.format("DumbTemplateCache[size=%d, hits=%d, misses=%d, evictions=%d]",
+                                size(), getHits(), getMisses(), getEvictions());
+    }
+
+    /**
+     * Returns the cached entry for a template, or null if there is none.
+     */
+    Supplier<DumbTemplate> get(String templateName) {
+        Supplier<DumbTemplate> result;
+        String[] evicted;
+        synchronized (_entries) {
+            result = deref(templateName, _entries.get(templateName));
+            evicted = takeEvicted();
+        }
+        (result == null ? _misses : _hits).increment();
+        evicted(evicted);
+        return result;
+    }
+
+    /**
+     * Returns the cached entry for a template, creating and caching a new one
+     * if there is none.  Entries should be cheap to create; put() entries
+     * that take time to create instead.
+     */
+    Supplier<DumbTemplate> get(String templateName, Function<String, Supplier<DumbTemplate>> create) {
+        Supplier<DumbTemplate> result;
+        boolean hit;
+        String[] evicted;
+        synchronized (_entries) {
+            result = deref(templateName, _entries.get(templateName));
+            hit = (result != null);
+            if (!hit) {
+                result = create.apply(templateName);
+                _entries.put(templateName, wrap(templateName, result));
+            }
+            evicted = takeEvicted();
+        }
+        (hit ? _hits : _misses).increment();
+        evicted(evicted);
+        return result;
+    }
+
+    /**
+     * Caches an entry for a template.
+     */
+    void put(String templateName, Supplier<DumbTemplate> entry) {
+        String[] evicted;
+        synchronized (_entries) {
+            _entries.put(templateName, wrap(templateName, entry));
+            evicted = takeEvicted();
+        }
+        evicted(evicted);
+    }
+
+    // whether the cache is allowed to let the garbage collector discard templates
+    boolean isSoft() { return _soft; }
+
+    // clears a soft entry just as the garbage collector would, for tests
+    void collect(String templateName) {
+        Object o;
+        synchronized (_entries) { o = _entries.get(templateName); }
+        if (o instanceof SoftEntry) {
+            ((SoftEntry) o).clear();
+            ((SoftEntry) o).enqueue();
+        }
+    }
+
+    private Object wrap(String templateName, Supplier<DumbTemplate> entry) {
+        return _soft ? new SoftEntry(templateName, entry, _collected) : entry;
+    }
+
+    // returns the entry held by o, or null if it has been garbage collected, in
+    // which case it is removed and will be reported to the store as evicted
+    @SuppressWarnings("unchecked")
+    private Supplier<DumbTemplate> deref(String templateName, Object o) {
+        if (!(o instanceof SoftEntry)) return (Supplier<DumbTemplate>) o;
+        Supplier<DumbTemplate> result = ((SoftEntry) o).get();
+        if (result == null && _entries.remove(templateName, o)) _evicted.add(templateName);
+        return result;
+    }
+
+    // returns (and forgets) the names of the templates evicted since last
+    // time, including any the garbage collector has discarded, or null if none
+    private String[] takeEvicted() {
+        for (Reference<?> ref; (ref = _collected.poll()) != null; ) {
+            String name = ((SoftEntry) ref).name;
+            if (_entries.remove(name, ref)) _evicted.add(name);
+        }
+        if (_evicted.isEmpty()) return null;
+        String[] result = _evicted.toArray(new String[_evicted.size()]);
+        _evicted.clear();
+        return result;
+    }
+
+    // tells the store about evicted templates, outside of the lock
+    private void evicted(String[] names) {
+        if (names == null) return;
+        for (String name : names) {
+            _evictions.increment();
+            _store.evicted(name);
+        }
+    }
+
+    /**
+     * Holds a cached entry softly, remembering its name so that it can be
+     * removed and reported once the garbage collector has discarded it.
+     */
+    private static final class SoftEntry extends SoftReference<Supplier<DumbTemplate>> {
+        final String name;
+
+        SoftEntry(String name, Supplier<DumbTemplate> entry, ReferenceQueue<Supplier<DumbTemplate>> queue) {
+            super(entry, queue);
+            this.name = name;
+        }
+    }
+}
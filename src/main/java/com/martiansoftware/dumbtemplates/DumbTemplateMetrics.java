@@ -0,0 +1,174 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A DumbMetrics implementation that keeps per-template counters in memory.
+ * Counters are LongAdders, so recording is cheap even when many threads
+ * render the same template at once.
+ *
+ * <pre>
+ * DumbTemplateMetrics metrics = new DumbTemplateMetrics();
+ * store.setMetrics(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class DumbTemplateMetrics implements DumbMetrics {
+
+    private final ConcurrentHashMap<String, Stats> _stats = new ConcurrentHashMap<>();
+
+    /**
+     * The counters for a single template.  Render latencies are recorded in a
+     * histogram whose bucket i counts renders that took between 2^i and
+     * 2^(i+1) nanoseconds.
+     */
+    public static final class Stats {
+        private final LongAdder _renders = new LongAdder();
+        private final LongAdder _renderNanos = new LongAdder();
+        private final LongAdder[] _latencies = new LongAdder[64];
+        private final LongAdder _outputs = new LongAdder();
+        private final LongAdder _outputSize = new LongAdder();
+        private final LongAdder _includes = new LongAdder();
+        private final LongAdder _missingVariables = new LongAdder();
+        private final LongAdder _loads = new LongAdder();
+        private final LongAdder _reloads = new LongAdder();
+        private final LongAdder _loadNanos = new LongAdder();
+
+        private Stats() {
+            for (int i = 0; i < _latencies.length; ++i) _latencies[i] = new LongAdder();
+        }
+
+        /** @return the number of times the template has been rendered (including via #include and #inside) */
+        public long getRenders() { return _renders.sum(); }
+
+        /** @return the total time spent rendering the template, including the templates it includes */
+        public long getRenderNanos() { return _renderNanos.sum(); }
+
+        /** @return the number of renders in each latency bucket (see above) */
+        public long[] getLatencyHistogram() {
+            long[] result = new long[_latencies.length];
+            for (int i = 0; i < result.length; ++i) result[i] = _latencies[i].sum();
+            return result;
+        }
+
+        /**
+         * Returns an upper bound on the specified percentile of render
+         * latency, accurate to within a factor of two.
+         *
+         * @param percentile the percentile (e.g. 99.9)
+         * @return the upper bound of the latency bucket containing the percentile
+         */
+        public long getLatencyPercentileNanos(double percentile) {
+            long[] h = getLatencyHistogram();
+            long total = 0;
+            for (long n : h) total += n;
+            long target = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < h.length; ++i) {
+                seen += h[i];
+                if (seen >= target && seen > 0) return (i >= 62) ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+            return 0;
+        }
+
+        /** @return the total size of the template's output when rendered on its own (see DumbMetrics.produced()) */
+        public long getOutputSize() { return _outputSize.sum(); }
+
+        /** @return the mean size of the template's output when rendered on its own */
+        public long getMeanOutputSize() {
+            long n = _outputs.sum();
+            return (n == 0) ? 0 : _outputSize.sum() / n;
+        }
+
+        /** @return the number of #include directives rendered by the template */
+        public long getIncludes() { return _includes.sum(); }
+
+        /** @return the mean number of #include directives rendered per render of the template */
+        public double getMeanFanOut() {
+            long n = _renders.sum();
+            return (n == 0) ? 0 : (double) _includes.sum() / n;
+        }
+
+        /** @return the number of times the template referred to a variable that was not in the context */
+        public long getMissingVariables() { return _missingVariables.sum(); }
+
+        /** @return the number of times the template has been loaded, including reloads */
+        public long getLoads() { return _loads.sum(); }
+
+        /** @return the number of times the template has been reloaded */
+        public long getReloads() { return _reloads.sum(); }
+
+        /** @return the total time spent loading and parsing the template */
+        public long getLoadNanos() { return _loadNanos.sum(); }
+
+        @Override public String toString() {
+            long renders = getRenders();
+            return String.format("renders=%d mean=%.1fus p99<=%.1fus meanSize=%d fanOut=%.1f missingVars=%d loads=%d reloads=%d loadTime=%.1fus",
+                                    renders, renders == 0 ? 0.0 : getRenderNanos() / 1e3 / renders,
+                                    getLatencyPercentileNanos(99) / 1e3, getMeanOutputSize(), getMeanFanOut(),
+                                    getMissingVariables(), getLoads(), getReloads(), getLoadNanos() / 1e3);
+        }
+    }
+
+    private Stats stats(String templateName) {
+        Stats result = _stats.get(templateName);
+        return (result != null) ? result : _stats.computeIfAbsent(templateName, n -> new Stats());
+    }
+
+    /**
+     * @param templateName the name of a template
+     * @return the counters for the template, or null if nothing has been recorded for it
+     */
+    public Stats getStats(String templateName) { return _stats.get(templateName); }
+
+    /**
+     * @return the counters for every template for which anything has been recorded, by template name
+     */
+    public Map<String, Stats> getStats() { return Collections.unmodifiableMap(new TreeMap<>(_stats)); }
+
+    /**
+     * Discards all counters.
+     */
+    public void reset() { _stats.clear(); }
+
+    @Override public void rendered(String templateName, long nanos) {
+        Stats s = stats(templateName);
+        s._renders.increment();
+        s._renderNanos.add(nanos);
+        s._latencies[63 - Long.numberOfLeadingZeros(Math.max(1, nanos))].increment();
+    }
+
+    @Override public void produced(String templateName, long size) {
+        Stats s = stats(templateName);
+        s._outputs.increment();
+        s._outputSize.add(size);
+    }
+
+    @Override public void included(String templateName, String includedName) {
+        stats(templateName)._includes.increment();
+    }
+
+    @Override public void missingVariable(String templateName, String varName) {
+        stats(templateName)._missingVariables.increment();
+    }
+
+    @Override public void loaded(String templateName, long nanos, boolean reload) {
+        Stats s = stats(templateName);
+        s._loads.increment();
+        if (reload) s._reloads.increment();
+        s._loadNanos.add(nanos);
+    }
+
+    @Override public String toString() {
+        StringBuilder s = new StringBuilder();
+        getStats().forEach((name, stats) -> s.append(name).append(": ").append(stats).append(String.format("%n")));
+        return s.toString();
+    }
+}
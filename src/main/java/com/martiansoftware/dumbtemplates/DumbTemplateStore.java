@@ -2,9 +2,27 @@ package com.martiansoftware.dumbtemplates;
 
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Holds a collection of DumbTemplates indexed by arbitrary template names.  The names
@@ -18,6 +36,9 @@ import java.util.Map;
  * A Gson object can be provided to control JSON serialization in templates.
  * If one is not provided, a default Gson object will be created automatically.
  *
+ * DumbTemplateStores are safe to use from multiple threads.  Lookups of
+ * templates that have already been added or loaded do not lock.
+ *
  * An optional DumbLogger can be provided to the constructor to alert
  * the user when things might be going wrong.  Otherwise template processing will
  * plow ahead. A default DumbLogger can be specified via <code>new DumbLogger(){}</code>.
@@ -29,9 +50,30 @@ import java.util.Map;
  */
 public class DumbTemplateStore {
 
+    /**
+     * The default limit on how deeply templates may be nested within one
+     * another via #include and #inside directives.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 64;
+
     protected final DumbLogger _log;
-    protected final Map<String, DumbTemplate> _templates = new java.util.HashMap<>();
+    protected final Map<String, DumbTemplate> _templates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<DumbTemplate>> _loading = new ConcurrentHashMap<>();
+    private final TemplateGraph _graph = new TemplateGraph(DEFAULT_MAX_DEPTH);
+    private final ConcurrentHashMap<String, LinkRef> _links = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Link> _unusedLinks = new ReferenceQueue<>(); // LinkRefs whose Links have been collected
+    private final ThreadLocal<Problems> _preloadProblems = new ThreadLocal<>(); // collects errors during preload()
+    private volatile BufferPool _bufferPool = null; // null unless buffer pooling is enabled
+    private volatile DumbFragmentCache _fragmentCache = null; // null unless fragment caching is enabled
+    private volatile Executor _includeExecutor = null; // null unless includes are rendered in parallel
+    private volatile DumbTemplateCache _templateCache = null; // null unless the number of loaded templates is limited
+    private volatile DumbMetrics _metrics = null;
+    private volatile long _warningIntervalNanos = TimeUnit.MINUTES.toNanos(1);
+    private volatile Charset _charset = StandardCharsets.UTF_8; // used to decode templates that are loaded from files or resources
+    private final RateLimitedWarning _missingVariables = new RateLimitedWarning("variable not defined");
+    private final RateLimitedWarning _missingTemplates = new RateLimitedWarning("cannot find template");
     protected volatile Gson _gson; // used for jsonizing vars in {$ [VAR]} directive
+    private volatile Json _json;   // writes JSON using _gson
     
     /**
      * Create a new, empty DumbTemplateStore that will silently ignore any exceptions
@@ -53,10 +95,16 @@ public class DumbTemplateStore {
      * @param templateName The name to use to access this DumbTemplate
      * @param templateDef The template definition
      * @return this DumbTemplateStore
+     * @throws IllegalArgumentException if the template would create a circular
+     * reference or nest templates too deeply (see setMaxDepth())
      */
     public DumbTemplateStore add(String templateName, String templateDef) {
         if (templateName.startsWith("/")) warning("template name '" + templateName + "' starts with a slash.  You probably don't want this.");
-        _templates.put(templateName, new DumbTemplate(templateName, this, templateDef));
+        long start = System.nanoTime();
+        DumbTemplate t = new DumbTemplate(templateName, this, templateDef);
+        register(t);
+        loaded(templateName, System.nanoTime() - start, _templates.put(templateName, t) != null);
+        invalidate(templateName);
         return this;
     }
     
@@ -67,14 +115,42 @@ public class DumbTemplateStore {
      * @param templateDef A Reader providing the template definition
      * @return this DumbTemplateStore
      * @throws IOException 
+     * @throws IllegalArgumentException if the template would create a circular
+     * reference or nest templates too deeply (see setMaxDepth())
      */
     public DumbTemplateStore add(String templateName, Reader templateDef) throws IOException {        
-        StringBuilder s = new StringBuilder();
-        int n; char[] cbuf = new char[4096];
-        while ((n = templateDef.read(cbuf)) != -1) s.append(cbuf, 0, n);            
-        return add(templateName, s.toString());
+        return add(templateName, Util.read(templateDef));
     }    
 
+    /**
+     * Sets the charset of templates loaded from files or the classpath.  The
+     * default is UTF-8.  Templates that are already loaded are not affected.
+     * 
+     * @param charset the charset of template files
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setCharset(Charset charset) {
+        _charset = charset;
+        return this;
+    }
+    
+    /**
+     * @return the charset of templates loaded from files or the classpath
+     */
+    public Charset getCharset() { return _charset; }
+    
+    /**
+     * Creates (but does not add) a DumbTemplate from source encoded in this
+     * store's charset.
+     * 
+     * @param templateName the name of the template
+     * @param source the encoded template definition
+     * @return the new DumbTemplate
+     */
+    protected DumbTemplate newTemplate(String templateName, byte[] source) {
+        return new DumbTemplate(templateName, this, new String(source, _charset));
+    }
+    
     /**
      * Returns the DumbTemplate with the specified name, or null if no such template exists.
      * 
@@ -106,16 +182,546 @@ public class DumbTemplateStore {
         get(templateName).render(context, out);
     }
     
+    /**
+     * Shortcut for get(templateName).render(context, out);
+     */
+    public void render(String templateName, Map<String, Object> context, Writer out) throws IOException {
+        get(templateName).render(context, out);
+    }
+    
+    /**
+     * Shortcut for get(templateName).render(context, out);
+     */
+    public void render(String templateName, Map<String, Object> context, OutputStream out) throws IOException {
+        get(templateName).render(context, out);
+    }
+    
+    /**
+     * Shortcut for get(templateName).render(context, chunkSize, consumer);
+     */
+    public void render(String templateName, Map<String, Object> context, int chunkSize, Consumer<? super CharBuffer> consumer) {
+        get(templateName).render(context, chunkSize, consumer);
+    }
+    
+    private static final Supplier<DumbTemplate> NOT_FOUND = () -> null;
+    
+    /**
+     * For stores that load templates on demand: returns the template with the
+     * specified name, calling the loader to create it if it has not already been
+     * added.  No matter how many threads ask for the same template at once,
+     * the loader runs only once; the others wait for and share its result.
+     * A successfully loaded template is added to this store (or to its
+     * template cache, if it has one), unless it would create a circular
+     * reference or nest templates too deeply, in which case an error is
+     * logged and null is returned.  If the store has a template cache, a
+     * null result is cached too.
+     * 
+     * @param templateName the name of the desired DumbTemplate
+     * @param loader creates the template, or returns null if it cannot be found
+     * @return the loaded template, or null if it could not be loaded
+     */
+    protected DumbTemplate load(String templateName, Supplier<DumbTemplate> loader) {
+        DumbTemplate result = _templates.get(templateName);
+        if (result != null) return result;
+        DumbTemplateCache cache = _templateCache;
+        if (cache != null) {
+            Supplier<DumbTemplate> cached = cache.get(templateName);
+            if (cached != null) return cached.get();
+        }
+        
+        CompletableFuture<DumbTemplate> f = new CompletableFuture<>();
+        CompletableFuture<DumbTemplate> inFlight = _loading.putIfAbsent(templateName, f);
+        if (inFlight != null) return inFlight.join();
+        try {
+            result = _templates.get(templateName); // in case a load completed just before ours started
+            if (result == null) {
+                long start = System.nanoTime();
+                result = loader.get();
+                if (result != null && !tryRegister(result)) result = null;
+                if (result != null) {
+                    loaded(templateName, System.nanoTime() - start, false);
+                    DumbTemplate t = result;
+                    if (cache == null) _templates.put(templateName, t); else cache.put(templateName, () -> t);
+                    invalidate(templateName);
+                } else if (cache != null) {
+                    cache.put(templateName, NOT_FOUND);
+                }
+            }
+            return result;
+        } finally {
+            f.complete(result);
+            _loading.remove(templateName, f);
+        }
+    }
+    
+    /**
+     * Records the templates referred to by a template that is about to be
+     * added to or loaded by this store.
+     * 
+     * @param t the template to record
+     * @throws IllegalArgumentException if the template would create a circular
+     * reference or nest templates too deeply
+     */
+    protected void register(DumbTemplate t) {
+        _graph.put(t.getName(), t.getDependencies());
+    }
+    
+    /**
+     * As register(), but logs an error instead of throwing an exception.
+     * 
+     * @param t the template to record
+     * @return true if the template was recorded
+     */
+    protected boolean tryRegister(DumbTemplate t) {
+        try {
+            register(t);
+            return true;
+        } catch (IllegalArgumentException e) {
+            error(e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the templates that each template added to or loaded by this
+     * store refers to via #include and #inside directives.  Templates that
+     * have not been loaded yet are not included.
+     * 
+     * @return a snapshot of the template dependency graph
+     */
+    public Map<String, Set<String>> getDependencyGraph() { return _graph.snapshot(); }
+    
+    /**
+     * Returns the names of the loaded templates that refer to the specified
+     * template via #include or #inside directives.
+     * 
+     * @param templateName the name of the template
+     * @return the names of the templates that depend upon it
+     */
+    public Set<String> getDependents(String templateName) { return _graph.dependents(templateName); }
+    
+    /**
+     * Returns the number of templates in the deepest chain of nested renders
+     * that the specified template can start, including itself, as far as is
+     * known from the templates that have been loaded so far.
+     * 
+     * @param templateName the name of the template
+     * @return the maximum render depth of the template
+     */
+    public int getDepth(String templateName) { return _graph.depth(templateName); }
+    
+    // the number of templates in the dependency graph, for tests
+    int graphSize() { return _graph.size(); }
+    
+    /**
+     * Sets the limit on how deeply templates may be nested within one another
+     * via #include and #inside directives.  Templates that would exceed it
+     * are rejected when they are added or loaded.  This does not affect
+     * templates that are already in the store.
+     * 
+     * @param maxDepth the maximum number of nested templates (DEFAULT_MAX_DEPTH by default)
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setMaxDepth(int maxDepth) {
+        _graph.setMaxDepth(maxDepth);
+        return this;
+    }
+    
+    /**
+     * Returns the Link shared by every directive in this store that refers
+     * to the named template.
+     */
+    Link link(String templateName) {
+        Link result = existingLink(templateName);
+        if (result != null) return result;
+        expungeLinks();
+        Link[] created = new Link[1];
+        _links.compute(templateName, (n, ref) -> {
+            created[0] = (ref == null) ? null : ref.get();
+            if (created[0] != null) return ref;
+            created[0] = new Link(this, n);
+            return new LinkRef(created[0], _unusedLinks);
+        });
+        return created[0];
+    }
+    
+    // returns the Link for the named template, or null if no directive holds one
+    private Link existingLink(String templateName) {
+        LinkRef ref = _links.get(templateName);
+        return (ref == null) ? null : ref.get();
+    }
+    
+    // forgets the names of Links that have been garbage collected
+    private void expungeLinks() {
+        for (java.lang.ref.Reference<? extends Link> ref; (ref = _unusedLinks.poll()) != null; ) {
+            _links.remove(((LinkRef) ref).name, ref);
+        }
+    }
+    
+    // the number of template names with Links that have not been garbage
+    // collected, whether or not their LinkRefs have been enqueued yet, for tests
+    int linkCount() {
+        expungeLinks();
+        int result = 0;
+        for (LinkRef ref : _links.values()) {
+            if (ref.get() != null) ++result;
+        }
+        return result;
+    }
+    
+    /**
+     * Links are held weakly, so that once no directive refers to a name any
+     * more (e.g., because the templates that did have been evicted) its Link
+     * can be collected.  Only one Link per name can be reachable at a time,
+     * so invalidating it still reaches every directive that refers to the name.
+     */
+    private static final class LinkRef extends WeakReference<Link> {
+        final String name;
+        
+        LinkRef(Link link, ReferenceQueue<Link> queue) {
+            super(link, queue);
+            name = link.name;
+        }
+    }
+    
+    /**
+     * Called when a template has been discarded from the template cache, so
+     * that the #include and #inside directives that refer to it let go of it,
+     * and so that the store forgets everything else it knew about it.
+     * 
+     * @param templateName the name of the discarded template
+     */
+    protected void evicted(String templateName) {
+        Link l = existingLink(templateName);
+        if (l != null) l.invalidate();
+        expungeLinks();
+        _graph.remove(templateName);
+        _missingVariables.forget(templateName);
+        _missingTemplates.forget(templateName);
+        DumbFragmentCache cache = _fragmentCache;
+        if (cache != null) cache.invalidate(java.util.Collections.singleton(templateName));
+    }
+    
+    /**
+     * Tells any #include or #inside directives that refer to the named
+     * template to look it up again the next time they are rendered.  Stores
+     * call this whenever a template is added or reloaded.
+     * 
+     * @param templateName the name of the template that has changed
+     */
+    protected void invalidate(String templateName) {
+        Link l = existingLink(templateName);
+        if (l != null) l.invalidate();
+        DumbFragmentCache cache = _fragmentCache;
+        if (cache != null) cache.invalidate(_graph.dependentsOf(templateName));
+    }
+    
+    /**
+     * Finds the named template on behalf of the #include and #inside
+     * directives that refer to it, returning a handle they will use on every
+     * render until invalidate() is called for that name.  By default the
+     * handle always returns the template found by get(); stores whose
+     * templates can change without a call to invalidate() should return a
+     * handle that rechecks them instead.
+     * 
+     * @param templateName the name of the template to find
+     * @return a handle to the template, or null if it cannot be found
+     */
+    protected Supplier<DumbTemplate> bind(String templateName) {
+        DumbTemplate result = get(templateName);
+        return (result == null) ? null : () -> result;
+    }
+    
+    /**
+     * Loads and parses every template available to this store in parallel
+     * on the common ForkJoinPool.  Call this at startup so that no request
+     * has to wait for a template to load.
+     * 
+     * @return the time taken by each template and any failures
+     * @throws IOException if the available templates cannot be listed
+     */
+    public DumbPreloadReport preload() throws IOException { return preload(ForkJoinPool.commonPool()); }
+    
+    /**
+     * Loads and parses every template available to this store in parallel
+     * on the specified ForkJoinPool.  Call this at startup so that no request
+     * has to wait for a template to load.
+     * 
+     * @param pool the pool on which to load templates
+     * @return the time taken by each template and any failures
+     * @throws IOException if the available templates cannot be listed
+     */
+    public DumbPreloadReport preload(ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        List<ForkJoinTask<DumbPreloadReport.Result>> tasks = new java.util.ArrayList<>();
+        for (String name : templateNames()) tasks.add(pool.submit(() -> preload(name)));
+        List<DumbPreloadReport.Result> results = new java.util.ArrayList<>(tasks.size());
+        for (ForkJoinTask<DumbPreloadReport.Result> task : tasks) results.add(task.join());
+        DumbPreloadReport report = new DumbPreloadReport(results, System.nanoTime() - start);
+        if (!report.isSuccessful()) error(report.getFailures().size() + " template(s) failed to preload");
+        return report;
+    }
+    
+    private DumbPreloadReport.Result preload(String templateName) {
+        Problems problems = new Problems();
+        _preloadProblems.set(problems);
+        long start = System.nanoTime();
+        DumbTemplate t = null;
+        try {
+            t = get(templateName);
+        } catch (Exception e) {
+            problems.exception(e);
+        } finally {
+            _preloadProblems.remove();
+        }
+        return new DumbPreloadReport.Result(templateName, System.nanoTime() - start, t != null, problems.errors, problems.exception);
+    }
+    
+    /**
+     * Returns the names of all templates available to this store, for preload().
+     * Lazily-loading stores override this to list their templates' source.
+     * 
+     * @return the names of all templates available to this store
+     * @throws IOException if the available templates cannot be listed
+     */
+    protected Collection<String> templateNames() throws IOException {
+        return new java.util.ArrayList<>(_templates.keySet());
+    }
+    
+    /**
+     * Enables or disables pooling of render buffers.  With pooling enabled,
+     * render(Map) and render(Map, OutputStream) reuse buffers from a small
+     * pool shared by all threads instead of allocating new ones for each
+     * render.  Buffers that have grown beyond the specified size are
+     * discarded after use rather than being kept in the pool.
+     * 
+     * @param maxBufferSize the largest buffer (in chars) to keep, or zero to disable pooling
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setBufferPooling(int maxBufferSize) {
+        _bufferPool = (maxBufferSize > 0) ? new BufferPool(maxBufferSize) : null;
+        return this;
+    }
+    
+    BufferPool getBufferPool() { return _bufferPool; }
+    
+    /**
+     * Enables caching of the rendered output of #included templates (see
+     * DumbFragmentCache), or disables it if maxEntries is zero.
+     * 
+     * @param maxEntries the maximum number of fragments to cache; the least
+     * recently used are discarded to make room for new ones
+     * @param ttl how long to keep each fragment, or zero to keep them until
+     * they are evicted or a template they are built from changes
+     * @param unit the unit of ttl
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setFragmentCache(int maxEntries, long ttl, TimeUnit unit) {
+        _fragmentCache = (maxEntries > 0) ? new DumbFragmentCache(this, maxEntries, ttl, unit) : null;
+        return this;
+    }
+    
+    /**
+     * @return the fragment cache (for its statistics), or null if fragment caching is not enabled
+     */
+    public DumbFragmentCache getFragmentCache() { return _fragmentCache; }
+    
+    /**
+     * Limits the number of templates that a lazily-loading store keeps in
+     * memory (see DumbTemplateCache), or removes the limit if maxTemplates
+     * is zero.  Set this before the store is used; templates loaded under
+     * the previous setting are loaded again when next needed.
+     * 
+     * @param maxTemplates the maximum number of loaded templates to keep
+     * @param softReferences if true, also let the garbage collector discard
+     * loaded templates when memory runs low
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setTemplateCache(int maxTemplates, boolean softReferences) {
+        _templateCache = (maxTemplates > 0) ? new DumbTemplateCache(this, maxTemplates, softReferences) : null;
+        return this;
+    }
+    
+    /**
+     * @return the template cache (for its statistics), or null if the number of loaded templates is not limited
+     */
+    public DumbTemplateCache getTemplateCache() { return _templateCache; }
+    
+    /**
+     * Renders the #includes of templates that have more than one of them in
+     * parallel on the specified Executor, or serially (the default) if it is
+     * null.  Each #include is rendered into its own buffer, and the buffers
+     * are written out in order as the rest of the template is rendered, so a
+     * template with several slow #includes (e.g., ones that use computed
+     * variables) takes about as long as the slowest of them.  Templates
+     * #included this way render their own #includes serially.
+     * 
+     * The context Map, and anything in it, must be safe to read from several
+     * threads at once.  The Executor should not be one whose threads render
+     * templates themselves and wait for the result, or they may wait on each
+     * other; on Java 21 or later, Executors.newVirtualThreadPerTaskExecutor()
+     * is a good choice.
+     * 
+     * @param executor the Executor to render #includes on, or null
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setIncludeExecutor(Executor executor) {
+        _includeExecutor = executor;
+        return this;
+    }
+    
+    /**
+     * @return the Executor that #includes are rendered on, or null if they are rendered serially
+     */
+    public Executor getIncludeExecutor() { return _includeExecutor; }
+    
     Gson getGson() {
-        if (_gson == null) _gson = new Gson();
-        return _gson;
+        Gson result = _gson;
+        return (result != null) ? result : DefaultGson.INSTANCE;
+    }
+    
+    // created on first use, so that gson isn't needed unless {$} is
+    private static class DefaultGson {
+        static final Gson INSTANCE = new Gson();
+    }
+    
+    // rebuilt whenever the Gson changes
+    Json getJson() {
+        Json result = _json;
+        Gson gson = getGson();
+        if (result == null || result.gson != gson) _json = result = new Json(gson);
+        return result;
     }
     
     public DumbTemplateStore setGson(Gson gson) { _gson = gson; return this;}
     
-    void exception(Exception e) { if (_log != null) _log.log(e); }    
-    void error(String msg) { if (_log != null) _log.log("Error: " + msg); }
+    /**
+     * Serializes a value to JSON now, so that {$} directives that use it do not
+     * have to serialize it again every time they are rendered.  Put the
+     * returned DumbFrozenJson into the context in place of the value itself.
+     * The value must not be modified afterwards.
+     * 
+     * @param value the value to serialize
+     * @return the value with its precomputed JSON
+     */
+    public DumbFrozenJson freezeJson(Object value) {
+        return new DumbFrozenJson(value, getJson().toJson(value));
+    }
+    
+    void exception(Exception e) {
+        Problems p = _preloadProblems.get();
+        if (p != null) p.exception(e);
+        if (_log != null) _log.log(e);
+    }
+    
+    void error(String msg) {
+        Problems p = _preloadProblems.get();
+        if (p != null) p.errors.add(msg);
+        if (_log != null) _log.log("Error: " + msg);
+    }
+    
+    /**
+     * Sends all future measurements to the specified DumbMetrics, or stops
+     * taking measurements if it is null.
+     * 
+     * @param metrics the recipient of measurements (e.g., a DumbTemplateMetrics)
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setMetrics(DumbMetrics metrics) {
+        _metrics = metrics;
+        return this;
+    }
+    
+    /**
+     * @return the recipient of measurements, or null if none
+     */
+    public DumbMetrics getMetrics() { return _metrics; }
+    
+    /**
+     * Sets how often the same warning about a missing variable or template
+     * may be logged.  Repeats within the interval are only counted, and the
+     * count is included with the next warning that is logged.  The default is
+     * one minute.
+     * 
+     * @param interval the minimum time between identical warnings
+     * @param unit the unit of interval
+     * @return this DumbTemplateStore
+     */
+    public DumbTemplateStore setWarningInterval(long interval, TimeUnit unit) {
+        _warningIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+    
+    /**
+     * Reports a template load to the metrics, if any.
+     * 
+     * @param templateName the template that was loaded
+     * @param nanos how long it took to read and parse
+     * @param reload true if the template replaced an earlier version
+     */
+    protected void loaded(String templateName, long nanos, boolean reload) {
+        DumbMetrics m = _metrics;
+        if (m != null) m.loaded(templateName, nanos, reload);
+    }
+    
+    void missingVariable(String templateName, String varName) {
+        DumbMetrics m = _metrics;
+        if (m != null) m.missingVariable(templateName, varName);
+        if (_log != null) _missingVariables.warn(templateName, varName);
+    }
+    
+    void missingTemplate(String templateName, String includedName) {
+        if (_log != null) _missingTemplates.warn(templateName, includedName);
+    }
+    
+    // the number of templates with rate-limited warnings, for tests
+    int warningCount() { return _missingVariables.size() + _missingTemplates.size(); }
+    
     void warning(String msg) { if (_log != null) _log.log("Warning: " + msg); }
     void log(String msg) { if (_log != null) _log.log(msg); }
     
+    // errors and exceptions reported while preloading a single template
+    private static class Problems {
+        final List<String> errors = new java.util.ArrayList<>();
+        Exception exception;
+        
+        void exception(Exception e) {
+            if (exception == null) exception = e;
+        }
+    }
+    
+    // logs a warning about something that is missing from a template, at
+    // most once per warning interval for each template and missing thing
+    private class RateLimitedWarning {
+        private final String _what;
+        private final ConcurrentHashMap<String, ConcurrentHashMap<String, Occurrences>> _seen = new ConcurrentHashMap<>();
+        
+        RateLimitedWarning(String what) { _what = what; }
+        
+        void forget(String templateName) { _seen.remove(templateName); }
+        
+        // the number of templates with warnings, for tests
+        int size() { return _seen.size(); }
+        
+        void warn(String templateName, String name) {
+            ConcurrentHashMap<String, Occurrences> byName = _seen.get(templateName);
+            if (byName == null) byName = _seen.computeIfAbsent(templateName, t -> new ConcurrentHashMap<>());
+            Occurrences o = byName.get(name);
+            if (o == null) o = byName.computeIfAbsent(name, n -> new Occurrences(System.nanoTime() - _warningIntervalNanos));
+            o.count.increment();
+            long now = System.nanoTime();
+            long last = o.lastLogged.get();
+            if (now - last >= _warningIntervalNanos && o.lastLogged.compareAndSet(last, now)) {
+                long n = o.count.sumThenReset();
+                warning(_what + ": " + name + " (in template '" + templateName + "'" + (n > 1 ? ", " + n + " times" : "") + ")");
+            }
+        }
+    }
+    
+    private static class Occurrences {
+        final java.util.concurrent.atomic.LongAdder count = new java.util.concurrent.atomic.LongAdder();
+        final java.util.concurrent.atomic.AtomicLong lastLogged; // System.nanoTime() of the last warning
+        
+        Occurrences(long lastLogged) { this.lastLogged = new java.util.concurrent.atomic.AtomicLong(lastLogged); }
+    }
 }
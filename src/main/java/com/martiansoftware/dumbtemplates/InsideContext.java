@@ -0,0 +1,80 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The context used to render an #inside template.  It is a read-only view
+ * of the caller's context with "content" layered on top, so the caller's Map
+ * is never modified.
+ *
+ * "content" is a Content object rather than a String, so that {= content}
+ * and {=! content} can render the inner template straight into the output
+ * at the point of use.  Anything else that looks at it (conditional
+ * includes, JSON, iteration over the context) sees it rendered as a String.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class InsideContext extends AbstractMap<String, Object> {
+
+    static final String CONTENT = "content";
+
+    private final Map<String, Object> _ctx;
+    private final Content _content;
+
+    InsideContext(Map<String, Object> ctx, Content content) {
+        _ctx = ctx;
+        _content = content;
+    }
+
+    /**
+     * The inner template of an #inside directive, to be rendered on demand.
+     */
+    static final class Content {
+        private final DumbTemplate _template;
+        private final Map<String, Object> _ctx;
+
+        Content(DumbTemplate template, Map<String, Object> ctx) {
+            _template = template;
+            _ctx = ctx;
+        }
+
+        void render(Sink out) { _template.renderInner(_ctx, out); }
+
+        @Override public String toString() {
+            Sink s = new Sink.StringSink(new StringBuilder(), true);
+            render(s);
+            return s.toString();
+        }
+    }
+
+    /**
+     * Returns o, or its rendered String if it is a Content.
+     */
+    static Object resolve(Object o) {
+        return (o instanceof Content) ? o.toString() : o;
+    }
+
+    @Override public Object get(Object key) {
+        return CONTENT.equals(key) ? _content : _ctx.get(key);
+    }
+
+    @Override public boolean containsKey(Object key) {
+        return CONTENT.equals(key) || _ctx.containsKey(key);
+    }
+
+    // size() and isEmpty() would otherwise iterate, and so render content
+    @Override public int size() {
+        return _ctx.containsKey(CONTENT) ? _ctx.size() : _ctx.size() + 1;
+    }
+
+    @Override public boolean isEmpty() { return false; }
+
+    // only used for iteration (e.g. {$}), so it's fine to render content here
+    @Override public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> result = new java.util.LinkedHashMap<>(_ctx);
+        result.put(CONTENT, _content.toString());
+        return java.util.Collections.unmodifiableMap(result).entrySet();
+    }
+}
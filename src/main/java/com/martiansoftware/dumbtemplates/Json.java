@@ -0,0 +1,68 @@
+package com.martiansoftware.dumbtemplates;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes values as JSON for the {$} directive, straight into a Sink.
+ *
+ * The TypeAdapter for each runtime class is looked up once and cached, and
+ * DumbFrozenJson values (wherever they appear) are written as their
+ * precomputed JSON.  Output is exactly what the store's Gson would produce
+ * from gson.toJson(value, appendable).
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class Json {
+
+    final Gson gson;            // the store's Gson that this was created for
+    private final Gson _gson;   // the same, but aware of DumbFrozenJson
+    private final ClassValue<TypeAdapter<Object>> _adapters = new ClassValue<TypeAdapter<Object>>() {
+        @SuppressWarnings("unchecked")
+        @Override protected TypeAdapter<Object> computeValue(Class<?> c) {
+            return (TypeAdapter<Object>) _gson.getAdapter(c);
+        }
+    };
+
+    Json(Gson gson) {
+        this.gson = gson;
+        _gson = gson.newBuilder().registerTypeHierarchyAdapter(DumbFrozenJson.class, new FrozenAdapter()).create();
+    }
+
+    @SuppressWarnings("deprecation") // setLenient() is deprecated in newer versions of gson
+    void write(Object o, Sink out) {
+        if (o == null) {
+            out.write("null");
+        } else if (o instanceof DumbFrozenJson) {
+            out.write(((DumbFrozenJson) o).getJson());
+        } else {
+            try {
+                JsonWriter w = _gson.newJsonWriter(out.asWriter());
+                w.setLenient(true); // as Gson.toJson() does, so that e.g. NaN is allowed
+                _adapters.get(o.getClass()).write(w, o);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    String toJson(Object o) {
+        Sink s = new Sink.StringSink(new StringBuilder());
+        write(o, s);
+        return s.toString();
+    }
+
+    private static class FrozenAdapter extends TypeAdapter<DumbFrozenJson> {
+        @Override public void write(JsonWriter out, DumbFrozenJson value) throws IOException {
+            out.jsonValue(value.getJson());
+        }
+
+        @Override public DumbFrozenJson read(JsonReader in) {
+            throw new UnsupportedOperationException("DumbFrozenJson is write-only");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.lang.ref.SoftReference;
+import java.util.function.Supplier;
+
+/**
+ * A binding from a template name to the template it currently refers to,
+ * shared by every #include and #inside directive in a store that names
+ * that template.  Each directive looks its Link up once; after that, renders
+ * go straight to the bound template without asking the store.
+ *
+ * When the named template is added or reloaded the store invalidates its
+ * Link, which bumps the version and makes the next render rebind it.  Only
+ * the templates that refer to that name are affected.
+ *
+ * If the store's template cache holds templates softly, so does the Link, so
+ * that a template that is only ever included can still be discarded by the
+ * garbage collector; the next render then rebinds the Link, which loads the
+ * template again.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class Link {
+
+    final String name;
+    private final DumbTemplateStore _store;
+    private volatile Object _target; // a Supplier<DumbTemplate> or a SoftReference to one; null until bound, or after invalidation
+    private volatile long _version = 0;
+
+    Link(DumbTemplateStore store, String name) {
+        _store = store;
+        this.name = name;
+    }
+
+    /**
+     * Returns the linked template, or null if it cannot be found.
+     */
+    DumbTemplate get() {
+        Supplier<DumbTemplate> t = target();
+        return (t != null) ? t.get() : bind();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<DumbTemplate> target() {
+        Object o = _target;
+        return (o instanceof SoftReference) ? ((SoftReference<Supplier<DumbTemplate>>) o).get() : (Supplier<DumbTemplate>) o;
+    }
+
+    /**
+     * Incremented each time the link is invalidated.
+     */
+    long version() { return _version; }
+
+    synchronized void invalidate() {
+        ++_version;
+        _target = null;
+    }
+
+    private DumbTemplate bind() {
+        long v = _version;
+        Supplier<DumbTemplate> t = _store.bind(name);
+        if (t == null) return null; // not found, so ask again next time
+        DumbTemplateCache cache = _store.getTemplateCache();
+        Object target = (cache != null && cache.isSoft()) ? new SoftReference<>(t) : t;
+        synchronized (this) {
+            if (_version == v) _target = target; // unless invalidated while we were binding
+        }
+        return t.get();
+    }
+
+    // clears the target just as the garbage collector would if it is held softly, for tests
+    void collect() {
+        Object o = _target;
+        if (o instanceof SoftReference) ((SoftReference<?>) o).clear();
+    }
+}
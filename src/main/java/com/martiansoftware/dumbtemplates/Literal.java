@@ -0,0 +1,52 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A static segment of a template (the text between directives), kept as
+ * chars and, once a byte-oriented Sink has needed them, as UTF-8 bytes, so
+ * that either can be copied straight to the output.  The Literals of a
+ * template are slices of a single String holding just their text, not the
+ * directives between them.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class Literal {
+
+    final String text;     // may be shared with other Literals
+    final int off;         // where this Literal starts in text
+    final int len;         // its length in chars
+    private volatile byte[] _utf8; // encoded on first use by a byte-oriented Sink
+
+    Literal(String text) { this(text, 0, text.length()); }
+
+    Literal(String text, int off, int len) {
+        this.text = text;
+        this.off = off;
+        this.len = len;
+    }
+
+    /**
+     * Returns exactly this Literal's UTF-8 bytes.
+     */
+    byte[] utf8() {
+        byte[] result = _utf8;
+        if (result == null) {
+            result = text.substring(off, off + len).getBytes(StandardCharsets.UTF_8);
+            _utf8 = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a single Literal holding the text of all of the specified
+     * Literals, one after another.
+     */
+    static Literal concat(List<Literal> parts) {
+        if (parts.size() == 1) return parts.get(0);
+        StringBuilder s = new StringBuilder();
+        for (Literal l : parts) s.append(l.text, l.off, l.off + l.len);
+        return new Literal(s.toString());
+    }
+}
@@ -1,6 +1,8 @@
 package com.martiansoftware.dumbtemplates;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.util.Map;
 
 /**
@@ -19,16 +21,26 @@ import java.util.Map;
  * 
  * Output is written to stdout.
  * 
+ * Alternatively, <code>bundle TEMPLATEDIR BUNDLEFILE</code> compiles every
+ * template in TEMPLATEDIR into a bundle for a DumbBundleTemplateStore.
+ * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
 public class Main {
  
     public static void main(String[] args) throws Exception {
+        if (args.length == 3 && "bundle".equals(args[0])) {
+            bundle(new File(args[1]), new File(args[2]));
+            return;
+        }
         if (args.length != 2) {
-            System.err.println("\nUsage: dumbtemplate TEMPLATEDIR TEMPLATENAME\n");
+            System.err.println("\nUsage: dumbtemplate TEMPLATEDIR TEMPLATENAME");
+            System.err.println("   or: dumbtemplate bundle TEMPLATEDIR BUNDLEFILE\n");
             System.err.println("Where TEMPLATEDIR is a directory containing your templates,");
             System.err.println("and TEMPLATENAME is the relative path within TEMPLATEDIR of the");
-            System.err.println("template you want to render.\n");
+            System.err.println("template you want to render.  The bundle command instead compiles");
+            System.err.println("every template in TEMPLATEDIR into BUNDLEFILE, for use with a");
+            System.err.println("DumbBundleTemplateStore.\n");
             System.exit(1);
         }
 
@@ -37,4 +49,12 @@ public class Main {
         System.getenv().forEach((k,v) -> ctx.put(k, v));        
         System.out.println(s.get(args[1]).render(ctx));
     }
+    
+    private static void bundle(File templateDir, File bundleFile) throws Exception {
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(templateDir, new DumbLogger(){});
+        try (OutputStream out = new FileOutputStream(bundleFile)) {
+            int n = DumbBundleTemplateStore.writeBundle(s, out);
+            System.err.println("Wrote " + n + " template(s) to " + bundleFile);
+        }
+    }
 }
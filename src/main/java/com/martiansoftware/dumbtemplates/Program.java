@@ -0,0 +1,133 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The compiled form of a DumbTemplate: a flat, immutable array of opcodes
+ * with one operand per opcode.  Rendering a template is just a loop over
+ * this array (see DumbTemplate.run()).
+ *
+ * Operands by opcode:
+ * <ul>
+ * <li>LITERAL: the Literal to copy to the output</li>
+ * <li>VAR, RAW_VAR: the name of the variable to insert</li>
+ * <li>JSON: the name of the variable to insert, or null for the entire context</li>
+ * <li>INCLUDE: an Include describing the (resolved) template and its condition</li>
+ * <li>INSIDE: the resolved name of the enclosing template (a no-op when rendering)</li>
+ * <li>FLUSH: none (no longer compiled, but may appear in bundles written by earlier versions)</li>
+ * </ul>
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class Program {
+
+    static final byte LITERAL = 0;
+    static final byte VAR = 1;
+    static final byte RAW_VAR = 2;
+    static final byte JSON = 3;
+    static final byte INCLUDE = 4;
+    static final byte INSIDE = 5;
+    static final byte FLUSH = 6;
+
+    final byte[] ops;
+    final Object[] args;
+
+    private Program(byte[] ops, Object[] args) {
+        this.ops = ops;
+        this.args = args;
+    }
+
+    /**
+     * An #include directive with its template name already resolved.
+     */
+    static final class Include {
+        final String template;  // resolved name of the template to include
+        final boolean unless;   // true if the condition is inverted
+        final String var;       // variable to examine, or null if unconditional
+        final String value;     // value to compare var against, or null to test truthiness
+        Link link;              // the store's link to the template, looked up on first use
+
+        Include(String template, boolean unless, String var, String value) {
+            this.template = template;
+            this.unless = unless;
+            this.var = var;
+            this.value = value;
+        }
+
+        boolean shouldInclude(Map<String, Object> ctx) {
+            if (var == null) return true; // just a dumb include
+            boolean result;
+            Object o = InsideContext.resolve(ctx.get(var));
+            if (value == null) {
+                result = Util.isTruthy(o);
+            } else {
+                String v = (o == null) ? "" : o.toString();
+                result = value.equals(v);
+            }
+            return unless ? !result : result;
+        }
+    }
+
+    static final class Builder {
+        private final String _source;   // the template's source
+        private int _textLen = 0;       // the total length of the literals so far
+        private byte[] _ops = new byte[16];
+        private Object[] _args = new Object[16];
+        private int _size = 0;
+
+        // for programs that are not compiled from source, and so never call literal()
+        Builder() { this(""); }
+
+        /**
+         * @param source the template's source
+         */
+        Builder(String source) { _source = source; }
+
+        Builder add(byte op, Object arg) {
+            if (_size == _ops.length) {
+                _ops = Arrays.copyOf(_ops, _size * 2);
+                _args = Arrays.copyOf(_args, _size * 2);
+            }
+            _ops[_size] = op;
+            _args[_size] = arg;
+            ++_size;
+            return this;
+        }
+
+        // adds the source between start and end as a Literal
+        Builder literal(int start, int end) {
+            _textLen += end - start;
+            return add(LITERAL, new Slice(start, end - start)); // replaced by a Literal in build(), once all of the text is known
+        }
+
+        Program build() {
+            // keep only the literals' text, not the directives between them
+            StringBuilder text = new StringBuilder(_textLen);
+            for (int i = 0; i < _size; ++i) {
+                if (!(_args[i] instanceof Slice)) continue;
+                Slice sl = (Slice) _args[i];
+                text.append(_source, sl.start, sl.start + sl.len);
+            }
+            String s = text.toString();
+            Object[] args = Arrays.copyOf(_args, _size);
+            for (int i = 0, off = 0; i < args.length; ++i) {
+                if (!(args[i] instanceof Slice)) continue;
+                int len = ((Slice) args[i]).len;
+                args[i] = new Literal(s, off, len);
+                off += len;
+            }
+            return new Program(Arrays.copyOf(_ops, _size), args);
+        }
+
+        // where a Literal is in the source
+        private static final class Slice {
+            final int start, len;
+
+            Slice(int start, int len) {
+                this.start = start;
+                this.len = len;
+            }
+        }
+    }
+}
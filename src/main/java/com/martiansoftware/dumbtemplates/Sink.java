@@ -0,0 +1,399 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Receives rendered template output.  Static template text arrives as
+ * Literals, which a Sink may copy either as chars or as pre-encoded UTF-8
+ * bytes; everything else (variable values, JSON) arrives as chars.
+ *
+ * Sinks are used by a single render at a time and are not thread-safe.  Any
+ * IOException from an underlying stream is rethrown as an UncheckedIOException.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+abstract class Sink implements Appendable {
+
+    abstract void write(Literal l);
+    abstract void write(char c);
+    abstract void write(String s, int off, int len);
+    abstract void write(char[] c, int off, int len);
+
+    void write(String s) { write(s, 0, s.length()); }
+
+    /**
+     * Returns how much has been written so far (chars or bytes, depending
+     * upon the destination), or -1 if unknown.
+     */
+    long written() { return -1; }
+
+    /**
+     * Returns true if templates rendered into this Sink must not render their
+     * #includes in parallel; e.g., because this Sink is itself collecting the
+     * output of an #include that is being rendered in parallel.
+     */
+    boolean serial() { return false; }
+
+    /**
+     * Called once when the top-level render is complete.
+     */
+    void finish() {}
+
+    /**
+     * Returns a Writer that writes to this Sink.  Flushing and closing it do nothing.
+     */
+    Writer asWriter() {
+        return new Writer() {
+            @Override public void write(int c) { Sink.this.write((char) c); }
+            @Override public void write(char[] c, int off, int len) { Sink.this.write(c, off, len); }
+            @Override public void write(String s, int off, int len) { Sink.this.write(s, off, len); }
+            @Override public void flush() {}
+            @Override public void close() {}
+        };
+    }
+
+    @Override public Sink append(CharSequence csq) {
+        return (csq == null) ? append("null", 0, 4) : append(csq, 0, csq.length());
+    }
+
+    @Override public Sink append(CharSequence csq, int start, int end) {
+        if (csq == null) return append("null", start, end);
+        if (csq instanceof String) {
+            write((String) csq, start, end - start);
+        } else {
+            for (int i = start; i < end; ++i) write(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override public Sink append(char c) {
+        write(c);
+        return this;
+    }
+
+    /**
+     * Writes chars to a StringBuilder.
+     */
+    static final class StringSink extends Sink {
+        private final StringBuilder _sb;
+        private final boolean _serial;
+
+        StringSink(StringBuilder sb) { this(sb, false); }
+
+        StringSink(StringBuilder sb, boolean serial) {
+            _sb = sb;
+            _serial = serial;
+        }
+
+        @Override boolean serial() { return _serial; }
+
+        @Override void write(Literal l) { _sb.append(l.text, l.off, l.off + l.len); }
+        @Override void write(char c) { _sb.append(c); }
+        @Override void write(String s, int off, int len) { _sb.append(s, off, off + len); }
+        @Override void write(char[] c, int off, int len) { _sb.append(c, off, len); }
+
+        @Override long written() { return _sb.length(); }
+
+        @Override public String toString() { return _sb.toString(); }
+    }
+
+    /**
+     * Collects chars in a fixed-size buffer, passing the buffer to a consumer
+     * each time it fills and once more at the end of the render.
+     */
+    static final class ChunkSink extends Sink {
+        private final char[] _buf;
+        private final CharBuffer _chunk; // the view of _buf passed to the consumer
+        private final Consumer<? super CharBuffer> _consumer;
+        private int _pos = 0;
+        private long _drained = 0;
+
+        ChunkSink(int chunkSize, Consumer<? super CharBuffer> consumer) {
+            if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+            _buf = new char[chunkSize];
+            _chunk = CharBuffer.wrap(_buf);
+            _consumer = consumer;
+        }
+
+        @Override void write(Literal l) { write(l.text, l.off, l.len); }
+
+        @Override void write(char c) {
+            if (_pos == _buf.length) drainBuffer();
+            _buf[_pos++] = c;
+        }
+
+        @Override void write(String s, int off, int len) {
+            while (len > 0) {
+                if (_pos == _buf.length) drainBuffer();
+                int n = Math.min(len, _buf.length - _pos);
+                s.getChars(off, off + n, _buf, _pos);
+                _pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override void write(char[] c, int off, int len) {
+            while (len > 0) {
+                if (_pos == _buf.length) drainBuffer();
+                int n = Math.min(len, _buf.length - _pos);
+                System.arraycopy(c, off, _buf, _pos, n);
+                _pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override long written() { return _drained + _pos; }
+
+        @Override void finish() { drainBuffer(); }
+
+        private void drainBuffer() {
+            if (_pos > 0) {
+                _chunk.clear();
+                _chunk.limit(_pos);
+                _consumer.accept(_chunk);
+                _drained += _pos;
+                _pos = 0;
+            }
+        }
+    }
+
+    /**
+     * Html-escapes everything written to it (exactly as Util.escape() does)
+     * before passing it on to another Sink.  Because its input arrives in
+     * pieces, a trailing space or high surrogate is held back until the next
+     * char (or finish()) shows what to do with it.
+     */
+    static final class EscapingSink extends Sink {
+        private final Sink _out;
+        private boolean _space = false; // a held-back space
+        private char _high = 0;         // a held-back high surrogate
+
+        EscapingSink(Sink out) { _out = out; }
+
+        @Override boolean serial() { return _out.serial(); }
+
+        @Override void write(Literal l) { write(l.text, l.off, l.len); }
+
+        @Override void write(String s, int off, int len) {
+            for (int i = off, end = off + len; i < end; ++i) write(s.charAt(i));
+        }
+
+        @Override void write(char[] c, int off, int len) {
+            for (int i = off, end = off + len; i < end; ++i) write(c[i]);
+        }
+
+        @Override void write(char c) {
+            if (_high != 0) {
+                char h = _high;
+                _high = 0;
+                if (c >= 0xDC00 && c <= 0xDFFF) {
+                    entity(0x010000 | (int) h - 0xD800 << 10 | (int) c - 0xDC00);
+                    return;
+                } // otherwise the high surrogate is dropped
+            }
+            if (_space) {
+                if (c == ' ') {
+                    _out.write("&nbsp;");
+                    return;
+                }
+                _out.write(' ');
+                _space = false;
+            }
+            if (c > ' ' && c <= 0x7E && c != '<' && c != '>' && c != '&') {
+                _out.write(c);
+            } else if (c == ' ') {
+                _space = true;
+            } else if (c == '<') {
+                _out.write("&lt;");
+            } else if (c == '>') {
+                _out.write("&gt;");
+            } else if (c == '&') {
+                _out.write("&amp;");
+            } else if (c >= 0xD800 && c <= 0xDFFF) {
+                if (c < 0xDC00) _high = c; // lone low surrogates are dropped
+            } else {
+                entity(c);
+            }
+        }
+
+        @Override void finish() {
+            if (_space) _out.write(' ');
+            _space = false;
+            _high = 0;
+        }
+
+        private void entity(int codepoint) {
+            _out.write("&#");
+            _out.write(Integer.toString(codepoint));
+            _out.write(';');
+        }
+    }
+
+    /**
+     * Writes chars to a Writer (usually a PrintWriter).  The Writer itself
+     * is never flushed; e.g., flushing a servlet's Writer would commit the
+     * response early.
+     */
+    static final class WriterSink extends Sink {
+        private final Writer _w;
+        private long _written = 0;
+
+        WriterSink(Writer w) { _w = w; }
+
+        @Override void write(Literal l) { write(l.text, l.off, l.len); }
+
+        @Override void write(char c) {
+            try { _w.write(c); } catch (IOException e) { throw new UncheckedIOException(e); }
+            ++_written;
+        }
+
+        @Override void write(String s, int off, int len) {
+            try { _w.write(s, off, len); } catch (IOException e) { throw new UncheckedIOException(e); }
+            _written += len;
+        }
+
+        @Override void write(char[] c, int off, int len) {
+            try { _w.write(c, off, len); } catch (IOException e) { throw new UncheckedIOException(e); }
+            _written += len;
+        }
+
+        @Override long written() { return _written; }
+    }
+
+    /**
+     * Encodes chars as UTF-8 into a buffer that is drained to a byte
+     * destination as it fills.  Literals are copied as their pre-encoded bytes.
+     */
+    abstract static class Utf8Sink extends Sink {
+        private final byte[] _buf;
+        private int _pos = 0;
+        private long _drained = 0; // bytes passed to drain()
+        private char _high = 0; // pending high surrogate, if any
+
+        Utf8Sink(int bufferSize) { this(new byte[bufferSize]); }
+        
+        Utf8Sink(byte[] buf) { _buf = buf; }
+
+        /**
+         * Writes bytes to the final destination.
+         */
+        abstract void drain(byte[] b, int off, int len);
+
+        @Override void write(Literal l) {
+            if (_high != 0) pendingSurrogate();
+            byte[] b = l.utf8();
+            if (b.length <= _buf.length - _pos) {
+                System.arraycopy(b, 0, _buf, _pos, b.length);
+                _pos += b.length;
+            } else {
+                drainBuffer();
+                drain(b, 0, b.length);
+                _drained += b.length;
+            }
+        }
+
+        @Override long written() { return _drained + _pos; }
+
+        @Override void write(char c) { encode(c); }
+
+        @Override void write(String s, int off, int len) {
+            for (int i = off, end = off + len; i < end; ++i) encode(s.charAt(i));
+        }
+
+        @Override void write(char[] c, int off, int len) {
+            for (int i = off, end = off + len; i < end; ++i) encode(c[i]);
+        }
+
+        @Override void finish() {
+            if (_high != 0) pendingSurrogate();
+            drainBuffer();
+        }
+
+        private void encode(char c) {
+            if (_pos > _buf.length - 4) drainBuffer(); // always leave room for a full code point
+            if (_high != 0) {
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(_high, c);
+                    _high = 0;
+                    _buf[_pos++] = (byte) (0xF0 | (cp >> 18));
+                    _buf[_pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    _buf[_pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    _buf[_pos++] = (byte) (0x80 | (cp & 0x3F));
+                    return;
+                }
+                pendingSurrogate();
+                if (_pos > _buf.length - 4) drainBuffer();
+            }
+            if (c < 0x80) {
+                _buf[_pos++] = (byte) c;
+            } else if (c < 0x800) {
+                _buf[_pos++] = (byte) (0xC0 | (c >> 6));
+                _buf[_pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                _high = c;
+            } else if (Character.isLowSurrogate(c)) {
+                _buf[_pos++] = '?'; // unpaired, just like String.getBytes()
+            } else {
+                _buf[_pos++] = (byte) (0xE0 | (c >> 12));
+                _buf[_pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                _buf[_pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        // a high surrogate that was not followed by a low surrogate
+        private void pendingSurrogate() {
+            _high = 0;
+            if (_pos == _buf.length) drainBuffer();
+            _buf[_pos++] = '?';
+        }
+
+        private void drainBuffer() {
+            if (_pos > 0) {
+                drain(_buf, 0, _pos);
+                _drained += _pos;
+                _pos = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes UTF-8 to an OutputStream.  The stream itself is never flushed.
+     */
+    static final class OutputStreamSink extends Utf8Sink {
+        private final OutputStream _out;
+
+        OutputStreamSink(OutputStream out) { this(out, new byte[8192]); }
+
+        OutputStreamSink(OutputStream out, byte[] buf) {
+            super(buf);
+            _out = out;
+        }
+
+        @Override void drain(byte[] b, int off, int len) {
+            try { _out.write(b, off, len); } catch (IOException e) { throw new UncheckedIOException(e); }
+        }
+    }
+
+    /**
+     * Writes UTF-8 to a ByteBuffer, throwing a BufferOverflowException if it
+     * runs out of room.
+     */
+    static final class ByteBufferSink extends Utf8Sink {
+        private final ByteBuffer _out;
+
+        ByteBufferSink(ByteBuffer out) {
+            super(256); // literals bypass this buffer, so it only needs to hold variable values
+            _out = out;
+        }
+
+        @Override void drain(byte[] b, int off, int len) { _out.put(b, off, len); }
+    }
+}
@@ -0,0 +1,158 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The directed graph of #include and #inside references between the
+ * templates in a store.  Every template is checked as it is added or loaded,
+ * so the graph never contains a cycle and no chain of nested renders is
+ * deeper than the configured limit.  That means rendering never needs to
+ * guard against runaway recursion itself.
+ *
+ * Templates that have been referenced but not yet loaded are leaves; they
+ * are checked in turn when they are loaded.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class TemplateGraph {
+
+    private final Map<String, Set<String>> _dependencies = new HashMap<>(); // template -> templates it references
+    private final Map<String, Set<String>> _dependents = new HashMap<>();   // template -> templates that reference it
+    private int _maxDepth;
+
+    TemplateGraph(int maxDepth) { _maxDepth = maxDepth; }
+
+    synchronized void setMaxDepth(int maxDepth) { _maxDepth = maxDepth; }
+
+    synchronized int getMaxDepth() { return _maxDepth; }
+
+    /**
+     * Adds or replaces a template's references, unless they would create a
+     * cycle or exceed the depth limit.
+     *
+     * @throws IllegalArgumentException if the template cannot be added
+     */
+    synchronized void put(String name, Set<String> dependencies) {
+        Set<String> visited = new java.util.HashSet<>();
+        for (String d : dependencies) {
+            List<String> path = pathTo(d, name, new ArrayList<>(), visited);
+            if (path != null) {
+                path.add(0, name);
+                throw new IllegalArgumentException("circular template reference: " + String.join(" -> ", path));
+            }
+        }
+        Map<String, Integer> depths = new HashMap<>();
+        int below = 0;
+        for (String d : dependencies) below = Math.max(below, depth(d, depths));
+        int depth = height(name, new HashMap<>()) + below;
+        if (depth > _maxDepth) {
+            throw new IllegalArgumentException("template '" + name + "' would nest templates " + depth
+                                                + " deep (the limit is " + _maxDepth + ")");
+        }
+
+        unlink(name, _dependencies.put(name, Collections.unmodifiableSet(new LinkedHashSet<>(dependencies))));
+        dependencies.forEach(d -> _dependents.computeIfAbsent(d, k -> new LinkedHashSet<>()).add(name));
+    }
+
+    /**
+     * Forgets a template's references (e.g., because it has been evicted).
+     * Templates that refer to it still know it, as a leaf.
+     */
+    synchronized void remove(String name) { unlink(name, _dependencies.remove(name)); }
+
+    // removes the edges from a template to its old dependencies, and any
+    // dependencies that nothing refers to any more
+    private void unlink(String name, Set<String> old) {
+        if (old == null) return;
+        for (String d : old) {
+            Set<String> parents = _dependents.get(d);
+            parents.remove(name);
+            if (parents.isEmpty()) _dependents.remove(d);
+        }
+    }
+
+    // the number of templates the graph knows of, for tests
+    synchronized int size() {
+        Set<String> names = new java.util.HashSet<>(_dependencies.keySet());
+        names.addAll(_dependents.keySet());
+        return names.size();
+    }
+
+    synchronized Set<String> dependencies(String name) {
+        Set<String> result = _dependencies.get(name);
+        return (result == null) ? Collections.emptySet() : result;
+    }
+
+    synchronized Set<String> dependents(String name) {
+        Set<String> result = _dependents.get(name);
+        return (result == null) ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(result));
+    }
+
+    /**
+     * Returns the named template and every template that refers to it,
+     * directly or indirectly.
+     */
+    synchronized Set<String> dependentsOf(String name) {
+        Set<String> result = new LinkedHashSet<>();
+        java.util.Deque<String> todo = new java.util.ArrayDeque<>();
+        todo.add(name);
+        while (!todo.isEmpty()) {
+            String n = todo.remove();
+            if (result.add(n)) {
+                Set<String> parents = _dependents.get(n);
+                if (parents != null) todo.addAll(parents);
+            }
+        }
+        return result;
+    }
+
+    synchronized Map<String, Set<String>> snapshot() {
+        return Collections.unmodifiableMap(new HashMap<>(_dependencies));
+    }
+
+    /**
+     * The number of templates in the deepest chain of nested renders
+     * starting at the named template, including itself.
+     */
+    synchronized int depth(String name) { return depth(name, new HashMap<>()); }
+
+    private int depth(String name, Map<String, Integer> memo) {
+        Integer known = memo.get(name);
+        if (known != null) return known;
+        int result = 0;
+        for (String d : dependencies(name)) result = Math.max(result, depth(d, memo));
+        memo.put(name, ++result);
+        return result;
+    }
+
+    // the number of templates in the longest chain of references ending at
+    // (and including) the named template
+    private int height(String name, Map<String, Integer> memo) {
+        Integer known = memo.get(name);
+        if (known != null) return known;
+        int result = 0;
+        Set<String> parents = _dependents.get(name);
+        if (parents != null) for (String p : parents) result = Math.max(result, height(p, memo));
+        memo.put(name, ++result);
+        return result;
+    }
+
+    // returns the chain of references from one template to another, or null if there is none
+    private List<String> pathTo(String from, String to, List<String> path, Set<String> visited) {
+        path.add(from);
+        if (from.equals(to)) return path;
+        if (visited.add(from)) {
+            for (String d : dependencies(from)) {
+                if (pathTo(d, to, path, visited) != null) return path;
+            }
+        }
+        path.remove(path.size() - 1);
+        return null;
+    }
+}
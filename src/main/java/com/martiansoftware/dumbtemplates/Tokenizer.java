@@ -0,0 +1,180 @@
+package com.martiansoftware.dumbtemplates;
+
+import com.martiansoftware.dumbtemplates.DumbTemplate.Directive;
+import java.util.List;
+
+/**
+ * Splits a template definition into its directives in a single pass.
+ *
+ * This is a hand-written equivalent of the regular expressions in
+ * DumbTemplate.Directive (which remain the reference grammar).  Scanning
+ * only stops at '{' characters, and each directive is recognized by looking
+ * at the character following the brace.  Whitespace is the same set matched
+ * by "\s" in those expressions.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class Tokenizer {
+
+    private Tokenizer() {}
+
+    /**
+     * A single directive found in a template definition.  Capture groups are
+     * numbered exactly as in the corresponding Directive regular expression,
+     * with group 0 holding the full directive text.
+     */
+    static final class Token {
+        public final Directive t;
+        public final int start, end;
+        public final String[] group;
+
+        Token(Directive t, int start, int end, String[] group) {
+            this.t = t;
+            this.start = start;
+            this.end = end;
+            this.group = group;
+        }
+    }
+
+    /**
+     * Returns all directives in the specified template definition, in order
+     * of appearance.
+     */
+    static List<Token> tokenize(String s) {
+        List<Token> result = new java.util.ArrayList<>();
+        int len = s.length();
+        int i = s.indexOf('{');
+        while (i >= 0 && i + 1 < len) {
+            Token t;
+            switch (s.charAt(i + 1)) {
+                case '#': t = hash(s, i); break;
+                case '=': t = var(s, i); break;
+                case '$': t = json(s, i); break;
+                default: t = null;
+            }
+            if (t == null) {
+                i = s.indexOf('{', i + 1);
+            } else {
+                result.add(t);
+                i = s.indexOf('{', t.end);
+            }
+        }
+        return result;
+    }
+
+    // {# include ... } or {# inside ... }
+    private static Token hash(String s, int start) {
+        int p = skipSpace(s, start + 2);
+        if (s.startsWith("include", p)) return include(s, start, p + 7);
+        if (s.startsWith("inside", p)) return inside(s, start, p + 6);
+        return null;
+    }
+
+    private static Token include(String s, int start, int p) {
+        int q = skipSpace(s, p);
+        if (q == p) return null;
+        int tEnd = symbolEnd(s, q);
+        if (tEnd == q) return null;
+        String template = s.substring(q, tEnd);
+
+        int w = skipSpace(s, tEnd);
+        if (w > tEnd) { // possible if/unless clause
+            String ifUnless = null;
+            int k = w;
+            if (s.startsWith("if", w)) { ifUnless = "if"; k = w + 2; }
+            else if (s.startsWith("unless", w)) { ifUnless = "unless"; k = w + 6; }
+
+            int v = skipSpace(s, k);
+            if (ifUnless != null && v > k) {
+                int vEnd = symbolEnd(s, v);
+                if (vEnd > v) {
+                    String var = s.substring(v, vEnd);
+                    int x = skipSpace(s, vEnd);
+                    if (x < s.length() && s.charAt(x) == '}') {
+                        // the optional value needs at least one character, which
+                        // it will borrow from the whitespace if there are two or more
+                        String value = (x - vEnd >= 2) ? s.substring(x - 1, x) : null;
+                        return token(Directive.INCLUDE, s, start, x + 1, template, ifUnless, var, value);
+                    }
+                    if (x > vEnd && x < s.length()) {
+                        int close = s.indexOf('}', x);
+                        if (close >= 0) {
+                            int valueEnd = close;
+                            while (isSpace(s.charAt(valueEnd - 1))) --valueEnd;
+                            return token(Directive.INCLUDE, s, start, close + 1, template, ifUnless, var, s.substring(x, valueEnd));
+                        }
+                    }
+                }
+            }
+        }
+
+        if (w < s.length() && s.charAt(w) == '}') return token(Directive.INCLUDE, s, start, w + 1, template, null, null, null);
+        return null;
+    }
+
+    private static Token inside(String s, int start, int p) {
+        int q = skipSpace(s, p);
+        if (q == p) return null;
+        int e = symbolEnd(s, q);
+        if (e == q) return null;
+        int w = skipSpace(s, e);
+        if (w < s.length() && s.charAt(w) == '}') return token(Directive.INSIDE, s, start, w + 1, s.substring(q, e));
+        return null;
+    }
+
+    // {= VAR} or {=! VAR}.  If "{=!" is not followed by a variable name then
+    // the '!' is itself treated as the variable name, just as the regex does.
+    private static Token var(String s, int start) {
+        int p = start + 2;
+        Token result = null;
+        if (p < s.length() && s.charAt(p) == '!') result = var(s, start, p + 1, "!");
+        return (result == null) ? var(s, start, p, null) : result;
+    }
+
+    private static Token var(String s, int start, int p, String escapeHint) {
+        int q = skipSpace(s, p);
+        int e = symbolEnd(s, q);
+        if (e == q) return null;
+        int w = skipSpace(s, e);
+        if (w < s.length() && s.charAt(w) == '}') return token(Directive.VAR, s, start, w + 1, escapeHint, s.substring(q, e));
+        return null;
+    }
+
+    // {$ VAR} or {$}
+    private static Token json(String s, int start) {
+        int q = skipSpace(s, start + 2);
+        int e = symbolEnd(s, q);
+        int w = skipSpace(s, e);
+        if (w < s.length() && s.charAt(w) == '}') return token(Directive.JSON, s, start, w + 1, (e == q) ? null : s.substring(q, e));
+        return null;
+    }
+
+    private static Token token(Directive t, String s, int start, int end, String... groups) {
+        String[] group = new String[groups.length + 1];
+        group[0] = s.substring(start, end);
+        System.arraycopy(groups, 0, group, 1, groups.length);
+        return new Token(t, start, end, group);
+    }
+
+    // same characters as \s in java.util.regex
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int skipSpace(String s, int i) {
+        int len = s.length();
+        while (i < len && isSpace(s.charAt(i))) ++i;
+        return i;
+    }
+
+    // end of a run of characters matching [^}\s]
+    private static int symbolEnd(String s, int i) {
+        int len = s.length();
+        while (i < len) {
+            char c = s.charAt(i);
+            if (c == '}' || isSpace(c)) break;
+            ++i;
+        }
+        return i;
+    }
+}
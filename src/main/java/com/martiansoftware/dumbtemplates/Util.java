@@ -1,6 +1,14 @@
 package com.martiansoftware.dumbtemplates;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
 /**
@@ -10,45 +18,101 @@ import java.util.stream.Collectors;
  */
 class Util {
     
+    static String escape(Object o) {
+        if (o == null) return "";
+        Sink s = new Sink.StringSink(new StringBuilder());
+        escape(o, s);
+        return s.toString();
+    }
+    
     // this method is based upon Android's Html.withinStyle() method, published
     // under the Apache 2.0 license, retrieved on June 1, 2014 from
     // http://grepcode.com/file_/repository.grepcode.com/java/ext/com.google.android/android/4.4.2_r1/android/text/Html.java/?v=source
     // License available at http://www.apache.org/licenses/LICENSE-2.0
-    static String escape(Object o) {
-        if (o == null) return "";
+    //
+    // runs of characters that need no escaping are written straight to the
+    // sink, so nothing is allocated for the (common) clean ascii case.
+    static void escape(Object o, Sink out) {
         String text = o.toString();
-        StringBuilder out = new StringBuilder();
         int end = text.length();
+        int clean = 0; // start of the current run of characters that need no escaping
         for (int i = 0; i < end; i++) {
             char c = text.charAt(i);
+            if (c > ' ' && c <= 0x7E) {
+                if (c != '<' && c != '>' && c != '&') continue;
+            } else if (c == ' ' && (i + 1 == end || text.charAt(i + 1) != ' ')) {
+                continue;
+            }
+            
+            if (i > clean) out.write(text, clean, i - clean);
+            clean = i + 1;
             if (c == '<') {
-                out.append("&lt;");
+                out.write("&lt;");
             } else if (c == '>') {
-                out.append("&gt;");
+                out.write("&gt;");
             } else if (c == '&') {
-                out.append("&amp;");
+                out.write("&amp;");
             } else if (c >= 0xD800 && c <= 0xDFFF) {
                 if (c < 0xDC00 && i + 1 < end) {
                     char d = text.charAt(i + 1);
                     if (d >= 0xDC00 && d <= 0xDFFF) {
                         i++;
-                        int codepoint = 0x010000 | (int) c - 0xD800 << 10 | (int) d - 0xDC00;
-                        out.append("&#").append(codepoint).append(";");
+                        clean = i + 1;
+                        writeEntity(0x010000 | (int) c - 0xD800 << 10 | (int) d - 0xDC00, out);
                     }
                 }
-            } else if (c > 0x7E || c < ' ') {
-                out.append("&#").append((int) c).append(";");
             } else if (c == ' ') {
                 while (i + 1 < end && text.charAt(i + 1) == ' ') {
-                    out.append("&nbsp;");
+                    out.write("&nbsp;");
                     i++;
                 }
-                out.append(' ');
+                clean = i; // the last space in the run is written as-is
             } else {
-                out.append(c);
+                writeEntity(c, out);
             }
         }
-        return out.toString();
+        if (clean < end) out.write(text, clean, end - clean);
+    }
+    
+    // writes &#codepoint; without building any Strings
+    private static void writeEntity(int codepoint, Sink out) {
+        out.write('&');
+        out.write('#');
+        int div = 1;
+        while (div <= codepoint / 10) div *= 10;
+        for (; div > 0; div /= 10) out.write((char) ('0' + (codepoint / div) % 10));
+        out.write(';');
+    }
+    
+    /**
+     * Reads everything from a Reader into a String
+     */
+    static String read(Reader r) throws IOException {
+        StringBuilder s = new StringBuilder(8192);
+        int n; char[] cbuf = new char[8192];
+        while ((n = r.read(cbuf)) != -1) s.append(cbuf, 0, n);
+        return s.toString();
+    }
+    
+    /**
+     * Reads everything from an InputStream into a byte array.  If the stream
+     * knows how much is available (as file and jar resources do), the bytes
+     * are read straight into an array of exactly the right size.
+     */
+    static byte[] read(InputStream in) throws IOException {
+        byte[] b = new byte[in.available()];
+        int len = 0;
+        while (true) {
+            if (len == b.length) {
+                int c = in.read(); // the end of the stream, or more than was available
+                if (c == -1) return b;
+                b = Arrays.copyOf(b, Math.max(8192, b.length * 2));
+                b[len++] = (byte) c;
+            }
+            int n = in.read(b, len, b.length - len);
+            if (n == -1) return Arrays.copyOf(b, len);
+            len += n;
+        }
     }
     
     /**
@@ -58,6 +122,8 @@ class Util {
      */
     static boolean isTruthy(Object o) {
         if (o == null) return false;
+        if (o instanceof DumbFrozenJson) o = ((DumbFrozenJson) o).getValue();
+        if (o == null) return false;
         
         if (Boolean.TRUE.equals(o)) return true;
         if (Boolean.FALSE.equals(o)) return false;
@@ -108,6 +174,22 @@ class Util {
         return path.stream().collect(Collectors.joining("/"));
     }
     
+    /**
+     * Lists every regular file under a directory as a /-separated path
+     * relative to that directory
+     */
+    static List<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile)
+                        .map(f -> {
+                            LinkedList<String> path = new LinkedList<>();
+                            for (Path part : dir.relativize(f)) path.add(part.toString());
+                            return joinPath(path);
+                        })
+                        .collect(Collectors.toList());
+        }
+    }
+    
     /**
      * Resolves a path as relative to the asker, with constraints preventing
      * resolution from exiting the path root.
@@ -0,0 +1,54 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class BatchRenderTest {
+
+    private static List<Map<String, Object>> rows(int n) {
+        return IntStream.range(0, n)
+                .mapToObj(i -> Collections.<String, Object>singletonMap("i", i))
+                .collect(Collectors.toList());
+    }
+
+    private static DumbTemplate template() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("row.txt", "<{= i}>");
+        s.add("page.txt", "Row {#include row.txt}");
+        return s.get("page.txt");
+    }
+
+    @Test
+    public void testOrdered() {
+        List<String> results = new ArrayList<>();
+        template().renderAll(rows(10000), true, results::add);
+        assertEquals(10000, results.size());
+        for (int i = 0; i < results.size(); ++i) assertEquals("Row <" + i + ">", results.get(i));
+    }
+
+    @Test
+    public void testUnordered() {
+        Set<String> results = Collections.synchronizedSet(new HashSet<>());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            template().renderAll(rows(10000).stream(), false, results::add, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(10000, results.size());
+        assertTrue(results.contains("Row <9999>"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool(1000);
+        StringBuilder sb = pool.chars(10);
+        sb.append("leftovers");
+        pool.release(sb);
+        StringBuilder again = pool.chars(500);
+        assertSame(sb, again);
+        assertEquals(0, again.length());
+        assertTrue(again.capacity() >= 500);
+
+        byte[] b = pool.bytes();
+        assertEquals(BufferPool.BYTE_BUFFER_SIZE, b.length);
+        pool.release(b);
+        assertSame(b, pool.bytes());
+    }
+
+    @Test
+    public void testOversizedBuffersAreDropped() {
+        BufferPool pool = new BufferPool(1000);
+        StringBuilder sb = pool.chars(10);
+        for (int i = 0; i < 2000; ++i) sb.append('x');
+        pool.release(sb);
+        assertNotSame(sb, pool.chars(10));
+    }
+
+    @Test
+    public void testPooledRendering() throws Exception {
+        DumbTemplateStore s = new DumbTemplateStore().setBufferPooling(4096);
+        s.add("inner.txt", "<{= v}>");
+        s.add("page.txt", "[{#include inner.txt}|{=! v}]");
+        DumbTemplateStore plain = new DumbTemplateStore();
+        plain.add("inner.txt", "<{= v}>");
+        plain.add("page.txt", "[{#include inner.txt}|{=! v}]");
+
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                final int thread = t;
+                results.add(exec.submit(() -> {
+                    for (int i = 0; i < 500; ++i) {
+                        StringBuilder v = new StringBuilder();
+                        for (int j = 0; j < (i * 37 + thread) % 3000; ++j) v.append((char) ('a' + j % 26));
+                        Map<String, Object> ctx = java.util.Collections.singletonMap("v", v + "&\u00e9");
+                        String expected = plain.render("page.txt", ctx);
+                        assertEquals(expected, s.render("page.txt", ctx));
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        s.render("page.txt", ctx, bytes);
+                        assertEquals(expected, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : results) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+}
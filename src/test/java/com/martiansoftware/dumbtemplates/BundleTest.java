@@ -0,0 +1,68 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class BundleTest {
+
+    private static void write(Path dir, String name, String content) throws IOException {
+        Path p = dir.resolve(name);
+        Files.createDirectories(p.getParent());
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Path dir = Files.createTempDirectory("dumbtemplates-test");
+        try {
+            write(dir, "layout.txt", "<html>{= title}|{=! content}</html>");
+            write(dir, "pages/page.txt", "{#inside ../layout.txt}caf\u00e9 {#include nav.txt if user}{#include nav.txt unless user bob}{$ data}{$}");
+            write(dir, "pages/nav.txt", "<nav \uD83D\uDE00>{= user}</nav>");
+            DumbLazyFileTemplateStore files = new DumbLazyFileTemplateStore(dir.toFile());
+
+            ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+            assertEquals(3, DumbBundleTemplateStore.writeBundle(files, bundle));
+            DumbBundleTemplateStore s = new DumbBundleTemplateStore(new ByteArrayInputStream(bundle.toByteArray()));
+
+            Map<String, Object> ctx = new HashMap<>();
+            ctx.put("title", "T&C");
+            ctx.put("user", "<amy>");
+            ctx.put("data", java.util.Arrays.asList(1, "\u00e9"));
+            for (String name : new String[] { "layout.txt", "pages/page.txt", "pages/nav.txt" }) {
+                assertEquals(files.render(name, ctx), s.render(name, ctx));
+                ByteArrayOutputStream expected = new ByteArrayOutputStream(), actual = new ByteArrayOutputStream();
+                files.render(name, ctx, expected);
+                s.render(name, ctx, actual);
+                assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            }
+            assertEquals(files.get("pages/page.txt").getDependencies(), s.get("pages/page.txt").getDependencies());
+            assertEquals(java.util.Collections.singleton("pages/page.txt"), s.getDependents("pages/nav.txt"));
+            assertTrue(s.preload().isSuccessful());
+        } finally {
+            Files.walk(dir).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testNotABundle() throws Exception {
+        try {
+            new DumbBundleTemplateStore(new ByteArrayInputStream("hello, world".getBytes(StandardCharsets.UTF_8)));
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Not a template bundle", e.getMessage());
+        }
+    }
+}
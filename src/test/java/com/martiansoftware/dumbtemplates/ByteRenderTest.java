@@ -0,0 +1,58 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that rendering to bytes matches rendering to a String.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class ByteRenderTest {
+
+    private DumbTemplateStore store() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("nav", "<nav>» {= user} «</nav>\n");
+        s.add("page", "<html>☃ {#include nav}<p>{=! raw}</p><pre>{$ data}</pre>😀</html>");
+        return s;
+    }
+
+    private Map<String, Object> ctx() {
+        Map<String, Object> ctx = new java.util.HashMap<>();
+        ctx.put("user", "Zoë <🐱>");
+        ctx.put("raw", "café 🍵 \ud800 lone");
+        ctx.put("data", Arrays.asList("über", 1, 2.5));
+        return ctx;
+    }
+
+    @Test
+    public void testOutputStream() throws Exception {
+        DumbTemplate t = store().get("page");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        t.render(ctx(), out);
+        assertArrayEquals(t.render(ctx()).getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void testByteBuffer() {
+        DumbTemplate t = store().get("page");
+        byte[] expected = t.render(ctx()).getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer bb = ByteBuffer.allocate(expected.length + 10);
+        bb.put((byte) '*');
+        t.render(ctx(), bb);
+        assertEquals(expected.length + 1, bb.position());
+        assertArrayEquals(expected, Arrays.copyOfRange(bb.array(), 1, bb.position()));
+
+        try {
+            t.render(ctx(), ByteBuffer.allocate(expected.length - 1));
+            fail("expected BufferOverflowException");
+        } catch (BufferOverflowException expectedException) {}
+    }
+}
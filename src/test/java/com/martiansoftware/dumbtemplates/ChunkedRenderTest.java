@@ -0,0 +1,70 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class ChunkedRenderTest {
+
+    private static DumbTemplateStore store() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < 100; ++i) row.append("static text ").append(i).append(' ');
+        s.add("row.txt", "<tr>{= cell} " + row + "</tr>\n");
+        s.add("rows.txt", "{#include row.txt}{#include row.txt}{#include row.txt}{#include row.txt}");
+        s.add("layout.txt", "<html><title>{= title}</title>{=! content}</html>");
+        s.add("report.txt", "{#inside layout.txt}<table>{#include rows.txt}{#include rows.txt}{$ cell}</table>");
+        return s;
+    }
+
+    @Test
+    public void testChunks() {
+        DumbTemplateStore s = store();
+        Map<String, Object> ctx = new HashMap<>();
+        ctx.put("title", "R&D");
+        ctx.put("cell", "a < b \uD83D\uDE00 ");
+        String expected = s.render("report.txt", ctx);
+        assertTrue(expected.length() > 8000);
+
+        for (int chunkSize : new int[] { 1, 7, 1024, 1000000 }) {
+            List<String> chunks = new ArrayList<>();
+            s.render("report.txt", ctx, chunkSize, chunk -> chunks.add(chunk.toString()));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < chunks.size(); ++i) {
+                String c = chunks.get(i);
+                if (i < chunks.size() - 1) assertEquals(chunkSize, c.length()); else assertTrue(c.length() <= chunkSize);
+                sb.append(c);
+            }
+            assertEquals(expected, sb.toString());
+        }
+    }
+
+    @Test
+    public void testEmptyOutput() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("empty.txt", "");
+        List<String> chunks = new ArrayList<>();
+        s.render("empty.txt", null, 16, chunk -> chunks.add(chunk.toString()));
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    public void testBadChunkSize() {
+        DumbTemplateStore s = store();
+        for (int chunkSize : new int[] { 0, -1 }) {
+            try {
+                s.render("report.txt", null, chunkSize, chunk -> fail("rendered a chunk"));
+                fail("rendered with a chunk size of " + chunkSize);
+            } catch (IllegalArgumentException e) {
+                assertEquals("chunk size must be positive: " + chunkSize, e.getMessage());
+            }
+        }
+    }
+}
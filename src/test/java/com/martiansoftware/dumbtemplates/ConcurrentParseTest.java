@@ -0,0 +1,133 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Parses the same templates from many threads at once and checks that the
+ * results render exactly as they do when parsed by a single thread.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class ConcurrentParseTest {
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void testConcurrentParsing() throws Exception {
+        DumbTemplateStore store = new DumbTemplateStore();
+        store.add("header.txt", "<h1>{= title}</h1>");
+        store.add("footer.txt", "<p>{=! footer}</p>");
+
+        List<String> defs = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            StringBuilder s = new StringBuilder();
+            for (int j = 0; j <= i; ++j) {
+                s.append("line ").append(j).append(" {= v").append(j % 5).append("}");
+                if (j % 3 == 0) s.append("{#include header.txt if show}");
+                if (j % 4 == 0) s.append("{#include footer.txt unless show}");
+                if (j % 7 == 0) s.append("{$ v").append(j % 5).append("}");
+                s.append('\n');
+            }
+            defs.add(s.toString());
+        }
+
+        Map<String, Object> ctx = new java.util.HashMap<>();
+        for (int i = 0; i < 5; ++i) ctx.put("v" + i, "<value " + i + ">");
+        ctx.put("title", "Title & such");
+        ctx.put("footer", "<b>footer</b>");
+        ctx.put("show", "yes");
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < defs.size(); ++i) expected.add(new DumbTemplate("t" + i, store, defs.get(i)).render(ctx));
+
+        ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; ++t) {
+                final int offset = t;
+                results.add(exec.submit(() -> {
+                    go.await();
+                    int checked = 0;
+                    for (int r = 0; r < ROUNDS; ++r) {
+                        int i = (offset + r) % defs.size();
+                        String actual = new DumbTemplate("t" + i, store, defs.get(i)).render(ctx);
+                        assertEquals("template t" + i, expected.get(i), actual);
+                        ++checked;
+                    }
+                    return checked;
+                }));
+            }
+            go.countDown();
+            int total = 0;
+            for (Future<Integer> f : results) total += f.get(60, TimeUnit.SECONDS);
+            assertEquals(THREADS * ROUNDS, total);
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSingleFlightLoading() throws Exception {
+        java.util.concurrent.atomic.AtomicInteger loads = new java.util.concurrent.atomic.AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        DumbTemplateStore store = new DumbTemplateStore() {
+            @Override public DumbTemplate get(String name) {
+                return load(name, () -> {
+                    loads.incrementAndGet();
+                    try { loading.await(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+                    return new DumbTemplate(name, this, "loaded {= x}");
+                });
+            }
+        };
+        
+        ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<DumbTemplate>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; ++t) results.add(exec.submit(() -> store.get("slow.txt")));
+            Thread.sleep(100); // give every thread a chance to pile up behind the first load
+            loading.countDown();
+            DumbTemplate first = results.get(0).get(60, TimeUnit.SECONDS);
+            for (Future<DumbTemplate> f : results) assertSame(first, f.get(60, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+            assertSame(first, store.get("slow.txt"));
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testConcurrentClasspathLoading() throws Exception {
+        DumbTemplateStore store = new DumbLazyClasspathTemplateStore("/test");
+        String[] names = { "inner.txt", "outer.txt", "a/a.txt", "a/b/b.txt", "a/b/c/c.txt" };
+        ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<DumbTemplate[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; ++t) {
+                results.add(exec.submit(() -> {
+                    go.await();
+                    DumbTemplate[] found = new DumbTemplate[names.length];
+                    for (int i = 0; i < names.length; ++i) found[i] = store.get(names[i]);
+                    return found;
+                }));
+            }
+            go.countDown();
+            DumbTemplate[] first = results.get(0).get(60, TimeUnit.SECONDS);
+            for (Future<DumbTemplate[]> f : results) assertArrayEquals(first, f.get(60, TimeUnit.SECONDS));
+            for (DumbTemplate d : first) assertNotNull(d);
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+}
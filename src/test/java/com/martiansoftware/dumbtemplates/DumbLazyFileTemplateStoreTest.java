@@ -0,0 +1,93 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class DumbLazyFileTemplateStoreTest {
+    
+    private Path _dir;
+    
+    @Before
+    public void setUp() throws Exception {
+        _dir = Files.createTempDirectory("dumbtemplates-test");
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(_dir).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+    
+    private void write(String name, String content, long lastModified) throws Exception {
+        Path p = _dir.resolve(name);
+        Files.createDirectories(p.getParent());
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+        p.toFile().setLastModified(lastModified);
+    }
+    
+    @Test
+    public void testRevalidation() throws Exception {
+        long t = System.currentTimeMillis() - 60000;
+        write("a.txt", "one", t);
+        
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(_dir.toFile());
+        s.setRevalidationInterval(1, TimeUnit.HOURS);
+        assertEquals("one", s.render("a.txt"));
+        
+        write("a.txt", "two", t + 5000);
+        assertEquals("one", s.render("a.txt")); // not checked again yet
+        
+        s.setRevalidationInterval(0, TimeUnit.SECONDS);
+        assertEquals("one", s.render("a.txt")); // the hour-long check is still pending
+        
+        s = new DumbLazyFileTemplateStore(_dir.toFile()).setRevalidationInterval(0, TimeUnit.SECONDS);
+        assertEquals("two", s.render("a.txt"));
+        write("a.txt", "three", t + 10000);
+        assertEquals("three", s.render("a.txt"));
+    }
+    
+    @Test
+    public void testCharsets() throws Exception {
+        String def = "caf\u00e9 {= x} \u20ac\uD83D\uDE00 {#include b.txt}!";
+        Files.write(_dir.resolve("a.txt"), def.getBytes(StandardCharsets.UTF_8));
+        Files.write(_dir.resolve("b.txt"), "na\u00efve".getBytes(StandardCharsets.UTF_8));
+        Files.write(_dir.resolve("bad.txt"), new byte[] { 'a', (byte) 0xC3, 'b', (byte) 0xFF });
+        java.util.Map<String, Object> ctx = java.util.Collections.singletonMap("x", "\u00fc");
+        
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(_dir.toFile());
+        String expected = "caf\u00e9 &#252; \u20ac\uD83D\uDE00 na\u00efve!";
+        assertEquals(expected, s.render("a.txt", ctx));
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        s.render("a.txt", ctx, out);
+        assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        
+        out.reset();
+        s.render("bad.txt", null, out);
+        assertEquals("a\uFFFDb\uFFFD", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        
+        s = new DumbLazyFileTemplateStore(_dir.toFile());
+        s.setCharset(StandardCharsets.ISO_8859_1);
+        assertEquals("na\u00c3\u00afve", s.render("b.txt"));
+        out.reset();
+        s.render("b.txt", null, out);
+        assertEquals("na\u00c3\u00afve", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void testMissingTemplate() throws Exception {
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(_dir.toFile()).setRevalidationInterval(0, TimeUnit.SECONDS);
+        assertNull(s.get("missing.txt"));
+        write("missing.txt", "found", System.currentTimeMillis());
+        assertEquals("found", s.render("missing.txt"));
+    }
+}
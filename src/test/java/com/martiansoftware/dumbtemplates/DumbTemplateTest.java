@@ -1,6 +1,7 @@
 package com.martiansoftware.dumbtemplates;
 
 import com.martiansoftware.dumbtemplates.DumbTemplate.Directive;
+import java.util.Map;
 import java.util.regex.Matcher;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -53,6 +54,146 @@ public class DumbTemplateTest {
         assertEquals("varname", m.group(3));
         assertEquals("value with spaces", m.group(4));
     }
+
+    @Test
+    public void testRender() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("greeting", "Hello, {= name}!");
+        s.add("page", "{#include greeting}|{=! raw}|{#include greeting if flag}|{#include greeting unless flag}"
+                    + "|{#include greeting if flag yes}|{$ num}|{$ missing}");
+        
+        Map<String, Object> ctx = new java.util.HashMap<>();
+        ctx.put("name", "<A & B>  C");
+        ctx.put("raw", "<b>");
+        ctx.put("flag", "yes");
+        ctx.put("num", 42);
+        assertEquals("Hello, &lt;A &amp; B&gt;&nbsp; C!|<b>|Hello, &lt;A &amp; B&gt;&nbsp; C!||Hello, &lt;A &amp; B&gt;&nbsp; C!|42|null",
+                        s.get("page").render(ctx));
+        
+        ctx.put("flag", "no");
+        assertEquals("Hello, &lt;A &amp; B&gt;&nbsp; C!|<b>||Hello, &lt;A &amp; B&gt;&nbsp; C!||42|null",
+                        s.get("page").render(ctx));
+    }
+    
+    @Test
+    public void testInside() {
+        DumbTemplateStore s = new DumbLazyClasspathTemplateStore("/test");
+        assertEquals("OUTER>>>\n\n\nThis is the inner content.\n\nThis is a.txt.\n\nThis is c.txt\n\nThis is b.txt.\n\n<<<OUTER",
+                        s.get("inner.txt").render(new java.util.HashMap<>()));
+    }
+
+    @Test
+    public void testEscape() {
+        assertEquals("", Util.escape(null));
+        assertEquals("plain text", Util.escape("plain text"));
+        assertEquals("a&nbsp; b&nbsp;&nbsp; c ", Util.escape("a  b   c "));
+        assertEquals("&nbsp; ", Util.escape("  "));
+        assertEquals("&lt;a href=\"x\"&gt;&amp;amp;&lt;/a&gt;", Util.escape("<a href=\"x\">&amp;</a>"));
+        assertEquals("caf&#233; &#128512; x y", Util.escape("caf\u00e9 \ud83d\ude00 \ud800x \udc00y\ud800"));
+        assertEquals("tab&#9;here&#10;new", Util.escape("tab\there\nnew"));
+        assertEquals("~&#127;&#0;", Util.escape("~\u007f\u0000"));
+        assertEquals("42", Util.escape(42));
+    }
+
+    @Test
+    public void testInsideStreamsContent() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("layout", "[{=! content}|{= content}|{#include flag if content}{$ content}]");
+        s.add("flag", "!");
+        s.add("page", "{#inside layout}<b>{= name}</b>  x\ud83d\ude00 ");
+        
+        Map<String, Object> ctx = java.util.Collections.singletonMap("name", "A&B");
+        String inner = "<b>A&amp;B</b>  x\ud83d\ude00 ";
+        String expected = "[" + inner + "|" + Util.escape(inner) + "|!" + new com.google.gson.Gson().toJson(inner) + "]";
+        assertEquals(expected, s.get("page").render(ctx)); // immutable context is fine
+        
+        Map<String, Object> mutable = new java.util.HashMap<>(ctx);
+        s.get("page").render(mutable);
+        assertEquals(ctx, mutable); // and is left untouched
+        
+        assertEquals("[<b></b>  x\ud83d\ude00 |&lt;b&gt;&lt;/b&gt;&nbsp; x&#128512; |!\"\\u003cb\\u003e\\u003c/b\\u003e  x\ud83d\ude00 \"]",
+                        s.get("page").render(null));
+    }
+
+    @Test
+    public void testInsideContextSizeDoesNotRender() {
+        java.util.concurrent.atomic.AtomicInteger renders = new java.util.concurrent.atomic.AtomicInteger();
+        Object probe = new Object() {
+            @Override public String toString() { return String.valueOf(renders.incrementAndGet()); }
+        };
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("page", "{= probe}");
+        Map<String, Object> ctx = new java.util.HashMap<>();
+        ctx.put("probe", probe);
+        
+        InsideContext inside = new InsideContext(ctx, new InsideContext.Content(s.get("page"), ctx));
+        assertEquals(2, inside.size());
+        assertFalse(inside.isEmpty());
+        ctx.put("content", "shadowed");
+        assertEquals(2, inside.size());
+        assertEquals(1, new InsideContext(java.util.Collections.emptyMap(), null).size());
+        assertEquals(0, renders.get());
+        
+        assertEquals(2, inside.entrySet().size()); // iterating does render it
+        assertEquals(1, renders.get());
+    }
+    
+    @Test
+    public void testOutputSizeEstimate() {
+        DumbTemplate t = new DumbTemplate("t", null, "0123456789{= v}0123456789");
+        assertEquals(20 + 16, t.getOutputSizeEstimate()); // static text, plus a guess for the var
+        assertEquals(10 + 16 * 4, new DumbTemplate("u", null, "{#inside t}0123456789{=! a}{$ b}{$}{#include c}").getOutputSizeEstimate());
+        
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) big.append("x");
+        Map<String, Object> ctx = java.util.Collections.singletonMap("v", big.toString());
+        for (int i = 0; i < 100; ++i) assertEquals(1020, t.render(ctx).length());
+        int estimate = t.getOutputSizeEstimate();
+        assertTrue(String.valueOf(estimate), estimate > 1000 && estimate <= 1020);
+        
+        for (int i = 0; i < 100; ++i) t.render(null);
+        estimate = t.getOutputSizeEstimate();
+        assertTrue(String.valueOf(estimate), estimate >= 20 && estimate < 40);
+    }
     
+    @Test
+    public void testWriter() throws Exception {
+        DumbTemplate t = new DumbTemplate("t", null, "Hello, {= name}!");
+        Map<String, Object> ctx = java.util.Collections.singletonMap("name", "<you>");
+        java.io.StringWriter sw = new java.io.StringWriter();
+        t.render(ctx, sw);
+        assertEquals("Hello, &lt;you&gt;!", sw.toString());
+        
+        java.io.Writer broken = new java.io.Writer() {
+            @Override public void write(char[] c, int off, int len) throws java.io.IOException { throw new java.io.IOException("disk full"); }
+            @Override public void flush() {}
+            @Override public void close() {}
+        };
+        try {
+            t.render(ctx, broken);
+            fail("expected an IOException");
+        } catch (java.io.IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        t.render(ctx, new java.io.PrintWriter(broken)); // PrintWriters swallow errors, as always
+    }
     
+    @Test
+    public void testNeverFlushes() throws Exception {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("layout.txt", "[{= content}]");
+        s.add("part.txt", "part {= v}");
+        s.add("page.txt", "{#inside layout.txt}{#include part.txt}, {#include part.txt}");
+        Map<String, Object> ctx = java.util.Collections.singletonMap("v", "x");
+        int[] flushes = new int[1];
+        java.io.StringWriter sw = new java.io.StringWriter() {
+            @Override public void flush() { ++flushes[0]; }
+        };
+        s.render("page.txt", ctx, (java.io.Writer) sw);
+        s.render("page.txt", ctx, new java.io.PrintWriter(sw));
+        s.setIncludeExecutor(Runnable::run);
+        s.render("page.txt", ctx, (java.io.Writer) sw);
+        assertEquals("[part x, part x][part x, part x][part x, part x]", sw.toString());
+        assertEquals(0, flushes[0]);
+    }
 }
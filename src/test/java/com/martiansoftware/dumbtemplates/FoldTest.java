@@ -0,0 +1,119 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class FoldTest {
+
+    // records each write it receives
+    private static class RecordingWriter extends StringWriter {
+        final List<String> writes = new ArrayList<>();
+        @Override public void write(char[] c, int off, int len) { writes.add(new String(c, off, len)); super.write(c, off, len); }
+        @Override public void write(String s, int off, int len) { writes.add(s.substring(off, off + len)); super.write(s, off, len); }
+        @Override public void write(int c) { writes.add(String.valueOf((char) c)); super.write(c); }
+    }
+
+    @Test
+    public void testStaticTreeIsOneWrite() throws Exception {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("leaf.txt", "leaf");
+        s.add("branch.txt", "({#include leaf.txt}|{#include leaf.txt})");
+        s.add("page.txt", "<{#include branch.txt}{#include branch.txt}>");
+
+        RecordingWriter w = new RecordingWriter();
+        s.get("page.txt").render(null, w);
+        assertEquals(Collections.singletonList("<(leaf|leaf)(leaf|leaf)>"), w.writes);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        s.add("leaf.txt", "caf\u00e9");
+        s.render("page.txt", null, bytes);
+        assertEquals("<(caf\u00e9|caf\u00e9)(caf\u00e9|caf\u00e9)>", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOnlyStaticUnconditionalIncludesAreInlined() throws Exception {
+        List<String> log = new ArrayList<>();
+        DumbTemplateStore s = new DumbTemplateStore(new DumbLogger() {
+            @Override public void log(String msg) { log.add(msg); }
+        });
+        s.add("layout.txt", "[{= content}]");
+        s.add("static.txt", "<b>");
+        s.add("framed.txt", "{#inside layout.txt}framed");
+        s.add("hello.txt", "hello {= name}");
+        s.add("page.txt", "{#include static.txt}{#include static.txt if show}{#include framed.txt}"
+                            + "{#include hello.txt}{#include missing.txt}{#include static.txt}");
+
+        RecordingWriter w = new RecordingWriter();
+        s.get("page.txt").render(Collections.singletonMap("name", "bob"), w);
+        assertEquals("<b>[framed]hello bob<b>", w.toString());
+        assertEquals("<b>", w.writes.get(0));
+        assertEquals(Collections.singletonList("Warning: cannot find template: missing.txt (in template 'page.txt')"), log);
+
+        // inlined text is still escaped when it ends up in escaped content
+        s.add("outer.txt", "{#inside layout.txt}{#include static.txt}");
+        assertEquals("[&lt;b&gt;]", s.render("outer.txt"));
+    }
+
+    @Test
+    public void testNoFlushSteps() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("hello.txt", "hello {= name}");
+        s.add("page.txt", "{#include hello.txt}!");
+        assertArrayEquals(new byte[] { Program.LITERAL, Program.VAR }, s.get("hello.txt").getProgram().ops);
+        assertArrayEquals(new byte[] { Program.INCLUDE, Program.LITERAL }, s.get("page.txt").getProgram().ops);
+    }
+
+    @Test
+    public void testReloadsRefold() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("leaf.txt", "one");
+        s.add("branch.txt", "[{#include leaf.txt}]");
+        s.add("page.txt", "<{#include branch.txt}>");
+        assertEquals("<[one]>", s.render("page.txt"));
+
+        s.add("leaf.txt", "two");
+        assertEquals("<[two]>", s.render("page.txt"));
+        s.add("leaf.txt", "{= n}");
+        assertEquals("<[3]>", s.render("page.txt", Collections.singletonMap("n", 3)));
+        s.add("leaf.txt", "three");
+        assertEquals("<[three]>", s.render("page.txt"));
+    }
+
+    @Test
+    public void testFileChangesRefold() throws Exception {
+        Path dir = Files.createTempDirectory("dumbtemplates-test");
+        try {
+            long t = System.currentTimeMillis() - 60000;
+            write(dir, "page.txt", "<{#include menu.txt}>", t);
+            write(dir, "menu.txt", "[{#include item.txt}]", t);
+            write(dir, "item.txt", "one", t);
+            DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(dir.toFile());
+            s.setRevalidationInterval(0, TimeUnit.SECONDS);
+            assertEquals("<[one]>", s.render("page.txt"));
+            write(dir, "item.txt", "two", t + 5000);
+            assertEquals("<[two]>", s.render("page.txt"));
+        } finally {
+            Files.walk(dir).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static void write(Path dir, String name, String content, long lastModified) throws Exception {
+        Path p = dir.resolve(name);
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+        p.toFile().setLastModified(lastModified);
+    }
+}
@@ -0,0 +1,119 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class FragmentCacheTest {
+
+    private static Map<String, Object> ctx(Object... kv) {
+        Map<String, Object> result = new HashMap<>();
+        for (int i = 0; i < kv.length; i += 2) result.put((String) kv[i], kv[i + 1]);
+        return result;
+    }
+
+    private static DumbTemplateStore store() {
+        DumbTemplateStore s = new DumbTemplateStore().setFragmentCache(100, 0, TimeUnit.SECONDS);
+        s.add("menu.txt", "<menu {= user}>{#include admin.txt if admin}</menu>");
+        s.add("admin.txt", "<admin/>");
+        s.add("page.txt", "{= title}:{#include menu.txt}");
+        return s;
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        DumbTemplateStore s = store();
+        DumbFragmentCache c = s.getFragmentCache();
+        assertEquals("a:<menu bob></menu>", s.render("page.txt", ctx("title", "a", "user", "bob")));
+        assertEquals("b:<menu bob></menu>", s.render("page.txt", ctx("title", "b", "user", "bob", "unused", "x")));
+        assertEquals(1, c.getMisses());
+        assertEquals(1, c.getHits());
+
+        assertEquals("a:<menu amy><admin/></menu>", s.render("page.txt", ctx("title", "a", "user", "amy", "admin", true)));
+        assertEquals("a:<menu amy></menu>", s.render("page.txt", ctx("title", "a", "user", "amy", "admin", false)));
+        assertEquals("a:<menu &lt;&gt;></menu>", s.render("page.txt", ctx("title", "a", "user", "<>")));
+        assertEquals(5, c.getMisses()); // the nested admin.txt include is cached too
+        assertEquals(5, c.size());
+    }
+
+    @Test
+    public void testInvalidation() {
+        DumbTemplateStore s = store();
+        DumbFragmentCache c = s.getFragmentCache();
+        Map<String, Object> ctx = ctx("title", "t", "user", "u", "admin", "y");
+        assertEquals("t:<menu u><admin/></menu>", s.render("page.txt", ctx));
+        s.add("admin.txt", "<root {= level}/>"); // a nested template changes, and refers to a new variable
+        assertEquals(0, c.size());
+        assertEquals("t:<menu u><root /></menu>", s.render("page.txt", ctx));
+        ctx.put("level", 3);
+        assertEquals("t:<menu u><root 3/></menu>", s.render("page.txt", ctx));
+        assertEquals(6, c.getMisses()); // menu.txt and admin.txt each time
+    }
+
+    @Test
+    public void testUncacheable() {
+        DumbTemplateStore s = store();
+        s.add("json.txt", "{$}");
+        s.add("page2.txt", "{#include json.txt}");
+        DumbFragmentCache c = s.getFragmentCache();
+        s.render("page.txt", ctx("user", Arrays.asList("not", "immutable")));
+        s.render("page.txt", ctx("user", Arrays.asList("not", "immutable")));
+        s.render("page2.txt", ctx("user", "u"));
+        assertEquals(3, c.getUncacheable());
+        assertEquals(0, c.getHits() + c.getMisses());
+    }
+
+    @Test
+    public void testEvictionAndExpiry() {
+        DumbTemplateStore s = store().setFragmentCache(2, 0, TimeUnit.SECONDS);
+        DumbFragmentCache c = s.getFragmentCache();
+        for (String user : new String[] { "a", "b", "c", "a" }) s.render("page.txt", ctx("user", user));
+        assertEquals(2, c.size());
+        assertEquals(2, c.getEvictions());
+        assertEquals(4, c.getMisses());
+
+        s.setFragmentCache(10, 1, TimeUnit.NANOSECONDS);
+        c = s.getFragmentCache();
+        s.render("page.txt", ctx("user", "a"));
+        s.render("page.txt", ctx("user", "a"));
+        assertEquals(2, c.getMisses());
+        assertEquals(1, c.getEvictions());
+    }
+
+    @Test
+    public void testNestedFileChanges() throws Exception {
+        Path dir = Files.createTempDirectory("dumbtemplates-test");
+        try {
+            long t = System.currentTimeMillis() - 60000;
+            write(dir, "page.txt", "<{#include menu.txt}>", t);
+            write(dir, "menu.txt", "[{#include item.txt}]", t);
+            write(dir, "item.txt", "one", t);
+            DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(dir.toFile());
+            s.setRevalidationInterval(0, TimeUnit.SECONDS).setFragmentCache(10, 0, TimeUnit.SECONDS);
+            assertEquals("<[one]>", s.render("page.txt"));
+            assertEquals("<[one]>", s.render("page.txt"));
+            assertEquals(1, s.getFragmentCache().getHits());
+            write(dir, "item.txt", "two", t + 5000);
+            assertEquals("<[two]>", s.render("page.txt"));
+        } finally {
+            Files.walk(dir).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static void write(Path dir, String name, String content, long lastModified) throws Exception {
+        Path p = dir.resolve(name);
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+        p.toFile().setLastModified(lastModified);
+    }
+}
@@ -0,0 +1,78 @@
+package com.martiansoftware.dumbtemplates;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class JsonTest {
+
+    private static Map<String, Object> context() {
+        Map<String, Object> ctx = new LinkedHashMap<>();
+        ctx.put("s", "<script>alert('hi') & \u00e9\ud83d\ude00</script>");
+        ctx.put("n", 42);
+        ctx.put("d", 1.5e300);
+        ctx.put("list", Arrays.asList(1, "two", null, 3.5));
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("a", null);
+        nested.put("b", Arrays.asList(true, false));
+        ctx.put("nested", nested);
+        return ctx;
+    }
+
+    private static void assertSameAsGson(Gson gson) {
+        DumbTemplateStore s = new DumbTemplateStore();
+        if (gson != null) s.setGson(gson); else gson = new Gson();
+        s.add("all.txt", "{$}");
+        s.add("var.txt", "{$ s}|{$ n}|{$ d}|{$ list}|{$ nested}|{$ missing}");
+        Map<String, Object> ctx = context();
+        assertEquals(gson.toJson(ctx), s.render("all.txt", ctx));
+        String expected = gson.toJson(ctx.get("s")) + "|" + gson.toJson(42) + "|" + gson.toJson(1.5e300)
+                            + "|" + gson.toJson(ctx.get("list")) + "|" + gson.toJson(ctx.get("nested")) + "|null";
+        assertEquals(expected, s.render("var.txt", ctx));
+        assertEquals(gson.toJson(java.util.Collections.emptyMap()), s.render("all.txt"));
+    }
+
+    @Test
+    public void testMatchesGson() {
+        assertSameAsGson(null);
+        assertSameAsGson(new GsonBuilder().setPrettyPrinting().serializeNulls().create());
+        assertSameAsGson(new GsonBuilder().disableHtmlEscaping().serializeSpecialFloatingPointValues().create());
+    }
+
+    @Test
+    public void testChangingGson() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("t.txt", "{$}");
+        Map<String, Object> ctx = java.util.Collections.singletonMap("x", null);
+        assertEquals("{}", s.render("t.txt", ctx));
+        s.setGson(new GsonBuilder().serializeNulls().create());
+        assertEquals("{\"x\":null}", s.render("t.txt", ctx));
+    }
+
+    @Test
+    public void testFrozenJson() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("t.txt", "{$ big}|{$}|{=! big}|{#include yes.txt if big}{#include no.txt if off}");
+        s.add("yes.txt", "yes");
+        s.add("no.txt", "no");
+
+        Map<String, Object> big = new LinkedHashMap<>();
+        big.put("k", Arrays.asList(1, 2, 3));
+        DumbFrozenJson frozen = s.freezeJson(big);
+        assertEquals("{\"k\":[1,2,3]}", frozen.getJson());
+        big.put("k", "changed after freezing, so not seen by {$}");
+
+        Map<String, Object> ctx = new LinkedHashMap<>();
+        ctx.put("big", frozen);
+        ctx.put("off", s.freezeJson(false));
+        assertEquals("{\"k\":[1,2,3]}|{\"big\":{\"k\":[1,2,3]},\"off\":false}|" + big + "|yes", s.render("t.txt", ctx));
+    }
+}
@@ -0,0 +1,83 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class LinkTest {
+
+    @Test
+    public void testLinkedRendersSkipTheStore() {
+        AtomicInteger lookups = new AtomicInteger();
+        DumbTemplateStore s = new DumbTemplateStore() {
+            @Override public DumbTemplate get(String name) {
+                lookups.incrementAndGet();
+                return super.get(name);
+            }
+        };
+        s.add("layout.txt", "[{=! content}]");
+        s.add("nav.txt", "nav");
+        s.add("footer.txt", "footer");
+        s.add("page.txt", "{#inside layout.txt}{#include nav.txt} body {#include footer.txt if show}{#include nav.txt}");
+        DumbTemplate page = s.get("page.txt");
+        java.util.Map<String, Object> ctx = new java.util.HashMap<>();
+        ctx.put("show", true);
+
+        assertEquals("[nav body footernav]", page.render(ctx));
+        int afterFirst = lookups.get();
+        for (int i = 0; i < 100; ++i) assertEquals("[nav body footernav]", page.render(ctx));
+        assertEquals(afterFirst, lookups.get());
+
+        // replacing a template only relinks the directives that refer to it
+        s.add("footer.txt", "FOOTER");
+        assertEquals("[nav body FOOTERnav]", page.render(ctx));
+        assertEquals(afterFirst + 1, lookups.get());
+        assertEquals("[nav body FOOTERnav]", page.render(ctx));
+        assertEquals(afterFirst + 1, lookups.get());
+    }
+
+    @Test
+    public void testMissingTemplatesAreNotLinked() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("page.txt", "a{#include later.txt}b");
+        assertEquals("ab", s.render("page.txt"));
+        s.add("later.txt", "-");
+        assertEquals("a-b", s.render("page.txt"));
+    }
+
+    @Test
+    public void testLinkedFileTemplatesAreRevalidated() throws Exception {
+        Path dir = Files.createTempDirectory("dumbtemplates-test");
+        try {
+            long t = System.currentTimeMillis() - 60000;
+            write(dir, "page.txt", "<{#include inc/part.txt}>", t);
+            write(dir, "inc/part.txt", "one", t);
+            DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(dir.toFile());
+            s.setRevalidationInterval(0, TimeUnit.SECONDS);
+            assertEquals("<one>", s.render("page.txt"));
+            assertEquals("<one>", s.render("page.txt"));
+            write(dir, "inc/part.txt", "two", t + 5000);
+            assertEquals("<two>", s.render("page.txt"));
+            s.add("inc/part.txt", "override");
+            assertEquals("<override>", s.render("page.txt"));
+        } finally {
+            Files.walk(dir).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static void write(Path dir, String name, String content, long lastModified) throws Exception {
+        Path p = dir.resolve(name);
+        Files.createDirectories(p.getParent());
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+        p.toFile().setLastModified(lastModified);
+    }
+}
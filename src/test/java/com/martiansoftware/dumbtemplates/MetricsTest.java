@@ -0,0 +1,70 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class MetricsTest {
+
+    @Test
+    public void testTemplateMetrics() throws Exception {
+        DumbTemplateMetrics metrics = new DumbTemplateMetrics();
+        DumbTemplateStore s = new DumbTemplateStore().setMetrics(metrics);
+        s.add("item.txt", "<li>{= item}</li>");
+        s.add("page.txt", "<ul>{#include item.txt}{#include item.txt}{#include item.txt if more}</ul>");
+        s.add("page.txt", "<ul>{#include item.txt}{#include item.txt}{#include item.txt if more}</ul>!");
+
+        Map<String, Object> ctx = java.util.Collections.singletonMap("item", "x");
+        for (int i = 0; i < 10; ++i) assertEquals("<ul><li>x</li><li>x</li></ul>!", s.render("page.txt", ctx));
+        s.render("page.txt", ctx, new ByteArrayOutputStream());
+
+        DumbTemplateMetrics.Stats page = metrics.getStats("page.txt");
+        assertEquals(11, page.getRenders());
+        assertEquals(22, page.getIncludes());
+        assertEquals(2.0, page.getMeanFanOut(), 0.0);
+        assertEquals(30, page.getMeanOutputSize());
+        assertEquals(2, page.getLoads());
+        assertEquals(1, page.getReloads());
+        assertEquals(0, page.getMissingVariables());
+        assertTrue(page.getRenderNanos() > 0);
+        long histogramTotal = 0;
+        for (long n : page.getLatencyHistogram()) histogramTotal += n;
+        assertEquals(11, histogramTotal);
+        assertTrue(page.getLatencyPercentileNanos(50) > 0);
+
+        DumbTemplateMetrics.Stats item = metrics.getStats("item.txt");
+        assertEquals(22, item.getRenders());
+        assertEquals(0, item.getOutputSize()); // only ever rendered as part of the page
+
+        s.render("item.txt");
+        assertEquals(1, item.getMissingVariables());
+        assertEquals(java.util.Arrays.asList("item.txt", "page.txt"), new ArrayList<>(metrics.getStats().keySet()));
+    }
+
+    @Test
+    public void testRateLimitedWarnings() {
+        List<String> log = new ArrayList<>();
+        DumbTemplateStore s = new DumbTemplateStore(new DumbLogger() {
+            @Override public void log(String msg) { synchronized (log) { log.add(msg); } }
+        });
+        s.add("t.txt", "{= a}{= b}{#include missing.txt}");
+        for (int i = 0; i < 100; ++i) s.render("t.txt");
+        assertEquals(java.util.Arrays.asList("Warning: variable not defined: a (in template 't.txt')",
+                                             "Warning: variable not defined: b (in template 't.txt')",
+                                             "Warning: cannot find template: missing.txt (in template 't.txt')"), log);
+
+        log.clear();
+        s.setWarningInterval(0, TimeUnit.SECONDS);
+        s.render("t.txt");
+        assertEquals(3, log.size());
+        assertEquals("Warning: variable not defined: a (in template 't.txt', 100 times)", log.get(0));
+    }
+}
@@ -0,0 +1,87 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class ParallelIncludeTest {
+
+    // a context whose "slow" variable can't be computed until every thread
+    // that needs it is waiting for it, so it can only be rendered in parallel
+    private static class SlowContext extends HashMap<String, Object> {
+        volatile CyclicBarrier barrier;
+
+        @Override public Object get(Object key) {
+            CyclicBarrier b = barrier;
+            if ("slow".equals(key) && b != null) {
+                try {
+                    b.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException("#includes were not rendered concurrently", e);
+                }
+            }
+            return super.get(key);
+        }
+    }
+
+    @Test
+    public void testParallelIncludes() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DumbTemplateStore s = new DumbTemplateStore().setIncludeExecutor(executor);
+            s.add("a.txt", "[a {= slow}]");
+            s.add("b.txt", "[b {= slow}{#include c.txt}{#include c.txt}]");
+            s.add("c.txt", "(c)");
+            s.add("page.txt", "<{= name}|{#include a.txt}|{#include b.txt}|{#include a.txt unless name}|{#include b.txt}>");
+
+            SlowContext ctx = new SlowContext();
+            ctx.put("name", "<x>");
+            ctx.put("slow", "&");
+            String expected = "<&lt;x&gt;|[a &amp;]|[b &amp;(c)(c)]||[b &amp;(c)(c)]>";
+            ctx.barrier = new CyclicBarrier(3); // one for each #include that is rendered
+            assertEquals(expected, s.render("page.txt", ctx));
+
+            ctx.barrier = null;
+            s.setIncludeExecutor(null);
+            assertEquals(expected, s.render("page.txt", ctx));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedInclude() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DumbTemplateStore s = new DumbTemplateStore().setIncludeExecutor(executor);
+            s.add("ok.txt", "ok");
+            s.add("page.txt", "{#include ok.txt}{#include ok.txt if bad}");
+            Map<String, Object> ctx = new HashMap<String, Object>() {
+                @Override public Object get(Object key) {
+                    if ("oops".equals(key)) throw new IllegalStateException("oops");
+                    return super.get(key);
+                }
+            };
+            ctx.put("bad", true);
+            assertEquals("okok", s.render("page.txt", ctx));
+            s.add("ok.txt", "{= oops}");
+            try {
+                s.render("page.txt", ctx);
+                fail("expected an exception");
+            } catch (IllegalStateException e) {
+                assertEquals("oops", e.getMessage());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
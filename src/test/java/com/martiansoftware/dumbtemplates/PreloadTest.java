@@ -0,0 +1,98 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class PreloadTest {
+
+    private static final List<String> TEST_TEMPLATES = Arrays.asList("a/a.txt", "a/b/b.txt", "a/b/c/c.txt", "inner.txt", "outer.txt");
+
+    private static List<String> names(DumbPreloadReport report) {
+        return report.getResults().stream().map(DumbPreloadReport.Result::getName).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testClasspathPreload() throws Exception {
+        DumbTemplateStore s = new DumbLazyClasspathTemplateStore("/test");
+        DumbPreloadReport report = s.preload();
+        assertTrue(report.toString(), report.isSuccessful());
+        assertEquals(TEST_TEMPLATES, names(report));
+        for (DumbPreloadReport.Result r : report.getResults()) {
+            assertTrue(r.getNanos() > 0);
+            assertTrue(r.getErrors().isEmpty());
+            assertSame(s.get(r.getName()), s.get(r.getName()));
+        }
+    }
+
+    @Test
+    public void testFilePreload() throws Exception {
+        Path dir = Files.createTempDirectory("dumbtemplates-test");
+        try {
+            for (String name : TEST_TEMPLATES) {
+                Path p = dir.resolve(name);
+                Files.createDirectories(p.getParent());
+                Files.write(p, ("this is " + name).getBytes(StandardCharsets.UTF_8));
+            }
+            DumbTemplateStore s = new DumbLazyFileTemplateStore(dir.toFile());
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                DumbPreloadReport report = s.preload(pool);
+                assertTrue(report.toString(), report.isSuccessful());
+                assertEquals(TEST_TEMPLATES, names(report));
+            } finally {
+                pool.shutdown();
+            }
+            assertEquals("this is a/b/c/c.txt", s.render("a/b/c/c.txt"));
+        } finally {
+            Files.walk(dir).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testPreloadFailures() throws Exception {
+        DumbTemplateStore s = new DumbTemplateStore() {
+            @Override protected Collection<String> templateNames() {
+                return new TreeSet<>(Arrays.asList("good.txt", "missing.txt", "broken.txt"));
+            }
+            @Override public DumbTemplate get(String name) {
+                return load(name, () -> {
+                    switch (name) {
+                        case "good.txt": return new DumbTemplate(name, this, "good");
+                        case "missing.txt": error("Template not found: " + name); return null;
+                        default: throw new IllegalStateException("broken");
+                    }
+                });
+            }
+        };
+        DumbPreloadReport report = s.preload();
+        assertFalse(report.isSuccessful());
+        assertEquals(3, report.getResults().size());
+
+        List<DumbPreloadReport.Result> failures = report.getFailures();
+        assertEquals(2, failures.size());
+        for (DumbPreloadReport.Result r : failures) {
+            if (r.getName().equals("missing.txt")) {
+                assertEquals(Arrays.asList("Template not found: missing.txt"), r.getErrors());
+                assertNull(r.getException());
+            } else {
+                assertEquals("broken.txt", r.getName());
+                assertTrue(r.getException() instanceof IllegalStateException);
+            }
+        }
+        assertEquals("good", s.render("good.txt"));
+    }
+}
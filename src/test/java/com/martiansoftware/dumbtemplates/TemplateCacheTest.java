@@ -0,0 +1,157 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class TemplateCacheTest {
+
+    private Path _dir;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = Files.createTempDirectory("dumbtemplates-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(_dir).sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    private void write(String name, String content) throws Exception {
+        Files.write(_dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFileStoreEviction() throws Exception {
+        for (String name : new String[] { "a", "b", "c" }) write(name + ".txt", name + "{#include part.txt}");
+        write("part.txt", "!");
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(new File(_dir.toString()));
+        s.setRevalidationInterval(1, TimeUnit.HOURS).setTemplateCache(2, false);
+        DumbTemplateCache c = s.getTemplateCache();
+
+        assertEquals("a!", s.render("a.txt"));
+        assertEquals("a!", s.render("a.txt"));
+        assertEquals(2, c.size());
+        assertEquals(0, c.getEvictions());
+
+        // renders that reach part.txt via an #include don't count as uses, so it is evicted
+        // first, and loaded again by the next render that needs it
+        assertEquals("b!", s.render("b.txt")); // evicts part.txt, then a.txt to reload it
+        assertEquals("c!", s.render("c.txt")); // evicts b.txt
+        assertEquals(2, c.size());
+        assertEquals(3, c.getEvictions());
+        assertEquals(5, c.getMisses()); // a, part, b, part, c
+
+        write("a.txt", "A{#include part.txt}");
+        assertEquals("A!", s.render("a.txt")); // reloaded because it was evicted
+    }
+
+    @Test
+    public void testEvictionForgetsTemplates() throws Exception {
+        for (int i = 0; i < 100; ++i) write("t" + i + ".txt", "{= missing}{#include part" + i + ".txt}");
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(new File(_dir.toString()), new DumbLogger() {
+            @Override public void log(String msg) {}
+        });
+        s.setRevalidationInterval(1, TimeUnit.HOURS).setTemplateCache(4, false);
+        for (int i = 0; i < 100; ++i) assertEquals("", s.render("t" + i + ".txt"));
+
+        // only what's left in the cache is remembered
+        assertTrue(s.getTemplateCache().getEvictions() >= 190);
+        assertTrue(s.graphSize() <= 8);
+        assertTrue(s.warningCount() <= 8);
+        for (int i = 0; i < 10 && s.linkCount() > 8; ++i) System.gc(); // links go once nothing refers to them
+        assertTrue("links: " + s.linkCount(), s.linkCount() <= 8);
+
+        write("part0.txt", "here");
+        assertEquals("here", s.render("t0.txt")); // evicted templates are loaded (and linked) again when needed
+    }
+
+    @Test
+    public void testCollectedTemplatesAreForgotten() throws Exception {
+        write("page.txt", "{= missing}{#include part.txt}");
+        write("part.txt", "!");
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(new File(_dir.toString()), new DumbLogger() {
+            @Override public void log(String msg) {}
+        });
+        s.setRevalidationInterval(1, TimeUnit.HOURS).setTemplateCache(10, true);
+        DumbTemplateCache c = s.getTemplateCache();
+        assertEquals("!", s.render("page.txt"));
+        assertEquals(2, s.graphSize());
+        assertEquals(1, s.warningCount());
+
+        c.collect("page.txt");
+        assertNotNull(s.get("part.txt")); // the next lookup notices what the garbage collector discarded
+        assertEquals(1, c.getEvictions());
+        assertEquals(1, c.size());
+        assertEquals(1, s.graphSize());
+        assertEquals(0, s.warningCount());
+
+        c.collect("part.txt");
+        write("page.txt", "page");
+        assertEquals("page", s.render("page.txt")); // and so does a lookup of the discarded template itself
+        assertEquals(2, c.getEvictions());
+        assertEquals(1, s.graphSize());
+    }
+
+    @Test
+    public void testIncludesDoNotPinSoftTemplates() throws Exception {
+        write("page.txt", "[{#include part.txt}]");
+        write("part.txt", "one");
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(new File(_dir.toString()));
+        s.setRevalidationInterval(1, TimeUnit.HOURS).setTemplateCache(10, true);
+        DumbTemplate page = s.get("page.txt");
+        assertEquals("[one]", page.render());
+
+        // the garbage collector may discard part.txt although page.txt refers to it
+        write("part.txt", "two");
+        s.getTemplateCache().collect("part.txt");
+        s.link("part.txt").collect();
+        assertEquals("[two]", page.render());
+        assertEquals(1, s.getTemplateCache().getEvictions());
+    }
+
+    @Test
+    public void testNotFoundIsCached() throws Exception {
+        DumbLazyFileTemplateStore s = new DumbLazyFileTemplateStore(new File(_dir.toString()));
+        s.setRevalidationInterval(1, TimeUnit.HOURS).setTemplateCache(10, true);
+        DumbTemplateCache c = s.getTemplateCache();
+        for (int i = 0; i < 5; ++i) assertNull(s.get("missing.txt"));
+        write("missing.txt", "here now");
+        assertNull(s.get("missing.txt")); // not looked for again until the revalidation interval passes
+        assertEquals(1, c.getMisses());
+        assertEquals(5, c.getHits());
+
+        DumbTemplateStore cp = new DumbLazyClasspathTemplateStore("/test").setTemplateCache(10, false);
+        c = cp.getTemplateCache();
+        for (int i = 0; i < 5; ++i) assertNull(cp.get("missing.txt"));
+        assertNotNull(cp.get("outer.txt"));
+        assertNotNull(cp.get("outer.txt"));
+        assertEquals(2, c.getMisses());
+        assertEquals(5, c.getHits());
+        assertEquals(2, c.size());
+    }
+
+    @Test
+    public void testClasspathStoreEviction() {
+        DumbTemplateStore s = new DumbLazyClasspathTemplateStore("/test").setTemplateCache(1, false);
+        String outer = s.render("outer.txt");
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(outer, s.render("outer.txt"));
+            assertNotNull(s.get("a/a.txt"));
+        }
+        assertEquals(1, s.getTemplateCache().size());
+        assertEquals(5, s.getTemplateCache().getEvictions());
+        assertEquals(6, s.getTemplateCache().getMisses());
+    }
+}
@@ -0,0 +1,113 @@
+package com.martiansoftware.dumbtemplates;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class TemplateGraphTest {
+
+    private static Set<String> set(String... s) { return new LinkedHashSet<>(Arrays.asList(s)); }
+
+    @Test
+    public void testDependencyGraph() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("layout.txt", "<{= content}>");
+        s.add("widgets/clock.txt", "tick");
+        s.add("nav.txt", "{#include widgets/clock.txt}");
+        s.add("page.txt", "{#inside layout.txt}{#include nav.txt}{#include widgets/clock.txt if x}");
+
+        Map<String, Set<String>> g = s.getDependencyGraph();
+        assertEquals(set("nav.txt", "widgets/clock.txt", "layout.txt"), g.get("page.txt"));
+        assertEquals(set("widgets/clock.txt"), g.get("nav.txt"));
+        assertEquals(Collections.emptySet(), g.get("layout.txt"));
+        assertEquals(set("nav.txt", "page.txt"), s.getDependents("widgets/clock.txt"));
+        assertEquals(3, s.getDepth("page.txt"));
+        assertEquals(1, s.getDepth("layout.txt"));
+    }
+
+    @Test
+    public void testCyclesAreRejected() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("a.txt", "{#include b.txt}");
+        s.add("b.txt", "{#include c.txt}");
+        try {
+            s.add("c.txt", "{#include a.txt}");
+            fail("cycle was not detected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("circular template reference: c.txt -> a.txt -> b.txt -> c.txt", e.getMessage());
+        }
+        assertNull(s.get("c.txt"));
+        assertEquals("", s.render("a.txt")); // renders without the missing template rather than overflowing the stack
+
+        try {
+            s.add("self.txt", "{#include self.txt}");
+            fail("cycle was not detected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("circular template reference: self.txt -> self.txt", e.getMessage());
+        }
+
+        try {
+            s.add("layout.txt", "{#include page.txt}");
+            s.add("page.txt", "{#inside layout.txt}");
+            fail("cycle was not detected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("circular template reference: page.txt -> layout.txt -> page.txt", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testReplacingTemplatesUpdatesTheGraph() {
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("a.txt", "{#include b.txt}");
+        s.add("b.txt", "b");
+        s.add("a.txt", "a");
+        s.add("b.txt", "{#include a.txt}"); // no longer circular
+        assertEquals("a", s.render("b.txt"));
+        assertEquals(set("b.txt"), s.getDependents("a.txt"));
+        assertEquals(Collections.emptySet(), s.getDependents("b.txt"));
+    }
+
+    @Test
+    public void testDepthLimit() {
+        DumbTemplateStore s = new DumbTemplateStore().setMaxDepth(3);
+        s.add("c.txt", "c");
+        s.add("b.txt", "{#include c.txt}");
+        s.add("a.txt", "{#include b.txt}");
+        try {
+            s.add("top.txt", "{#include a.txt}");
+            fail("depth limit was not enforced");
+        } catch (IllegalArgumentException e) {
+            assertEquals("template 'top.txt' would nest templates 4 deep (the limit is 3)", e.getMessage());
+        }
+        try {
+            s.add("c.txt", "{#include d.txt}"); // deepens a chain that is already at the limit
+            fail("depth limit was not enforced");
+        } catch (IllegalArgumentException e) {
+            assertEquals("template 'c.txt' would nest templates 4 deep (the limit is 3)", e.getMessage());
+        }
+        assertEquals("c", s.render("a.txt"));
+    }
+
+    @Test
+    public void testLazyCyclesAreRejected() {
+        StringBuilder log = new StringBuilder();
+        DumbTemplateStore s = new DumbLazyClasspathTemplateStore("/test", new DumbLogger() {
+            @Override public void log(String msg) { log.append(msg).append('\n'); }
+        }) {
+            @Override public DumbTemplate get(String name) {
+                if (!name.startsWith("loop")) return super.get(name);
+                return load(name, () -> new DumbTemplate(name, this, "[{#include " + ("loop1.txt".equals(name) ? "loop2.txt" : "loop1.txt") + "}]"));
+            }
+        };
+        assertEquals("[]", s.render("loop1.txt")); // loop2.txt is rejected
+        assertTrue(log.toString(), log.toString().contains("circular template reference: loop2.txt -> loop1.txt -> loop2.txt"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.martiansoftware.dumbtemplates;
+
+import com.martiansoftware.dumbtemplates.DumbTemplate.Directive;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the hand-written Tokenizer against the regular expressions in
+ * DumbTemplate.Directive.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class TokenizerTest {
+
+    // bits and pieces that are likely to form (and almost form) directives
+    private static final String[] FRAGMENTS = {
+        "{", "}", "{#", "{=", "{=!", "{$", "#", "=", "!", "$", " ", "  ", "\t", "\n", "\r\n",
+        "include", "inside", "if", "unless", "ifx", "x", "tpl.txt", "../a/b.txt", "val ue", "\u00e9", "\u00f8 ",
+        "{# include ", "{#inside ", "{= ", " if ", " unless ", "} text "
+    };
+
+    @Test
+    public void testKnownForms() {
+        assertTokens("{#include template}", "INCLUDE|0|19|template|null|null|null");
+        assertTokens("x{# include  t  unless v   some value  }y", "INCLUDE|1|40|t|unless|v|some value");
+        assertTokens("{#include t if v  }", "INCLUDE|0|19|t|if|v| ");
+        assertTokens("{#include t if v }", "INCLUDE|0|18|t|if|v|null");
+        assertTokens("{#include t if}");
+        assertTokens("{#inside layout.txt }", "INSIDE|0|21|layout.txt");
+        assertTokens("{= a}{=!b }{=! }", "VAR|0|5|null|a", "VAR|5|11|!|b", "VAR|11|16|null|!");
+        assertTokens("{$}{$ v}{$ v w}", "JSON|0|3|null", "JSON|3|8|v");
+        assertTokens("{ = a}{#includex}{#include}{=}{");
+    }
+
+    // the regex parse rendered every match, even where they overlapped (so
+    // "{={$}" was both {= {$} and {$}); the tokenizer reads from left to right,
+    // so the first directive wins and the text it contains is not scanned again
+    @Test
+    public void testOverlappingDirectives() {
+        assertEquals(java.util.Arrays.asList("VAR|0|5|null|{$"), describe(Tokenizer.tokenize("{={$}")));
+        assertEquals(java.util.Arrays.asList("INCLUDE|0|22|t|if|v|{= x"), describe(Tokenizer.tokenize("{#include t if v {= x}")));
+        assertEquals(java.util.Arrays.asList("VAR|3|8|null|x"), describe(Tokenizer.tokenize("{$ {= x}")));
+
+        DumbTemplateStore s = new DumbTemplateStore();
+        s.add("t", "T");
+        s.add("a", "{={$}");
+        s.add("b", "{#include t if v {= x}");
+        Map<String, Object> ctx = new java.util.HashMap<>();
+        ctx.put("{$", "Y");
+        ctx.put("v", "{= x");
+        ctx.put("x", "X");
+        assertEquals("Y", s.render("a", ctx));     // was Y followed by the context as JSON
+        assertEquals("T", s.render("b", ctx));     // was TX
+    }
+
+    @Test
+    public void testAgainstRegexGrammar() {
+        Random r = new Random(20140601);
+        int compared = 0;
+        for (int n = 0; n < 20000; ++n) {
+            StringBuilder s = new StringBuilder();
+            for (int i = r.nextInt(40); i >= 0; --i) s.append(FRAGMENTS[r.nextInt(FRAGMENTS.length)]);
+            String template = s.toString();
+
+            List<String> expected = regexTokens(template);
+            if (expected == null) continue; // overlapping matches; see testOverlappingDirectives()
+            assertEquals(template, expected, describe(Tokenizer.tokenize(template)));
+            ++compared;
+        }
+        assertTrue("too few templates compared: " + compared, compared > 15000);
+    }
+
+    private static void assertTokens(String template, String... expected) {
+        List<String> e = new ArrayList<>();
+        for (String s : expected) e.add(s);
+        assertEquals(template, e, describe(Tokenizer.tokenize(template)));
+        assertEquals(template, e, regexTokens(template));
+    }
+
+    private static List<String> describe(List<Tokenizer.Token> tokens) {
+        List<String> result = new ArrayList<>();
+        for (Tokenizer.Token t : tokens) result.add(describe(t.t, t.start, t.end, t.group));
+        return result;
+    }
+
+    private static String describe(Directive t, int start, int end, String[] group) {
+        StringBuilder s = new StringBuilder(t.name()).append('|').append(start).append('|').append(end);
+        for (int i = 1; i < group.length; ++i) s.append('|').append(group[i]);
+        return s.toString();
+    }
+
+    // the original multi-pass regex parse: every directive's matches, sorted by
+    // start index.  returns null if any two matches overlap, since the regex
+    // approach would then render both of them.
+    private static List<String> regexTokens(String template) {
+        Map<Integer, String> matches = new java.util.TreeMap<>();
+        Map<Integer, Integer> ends = new java.util.TreeMap<>();
+        for (Directive t : Directive.values()) {
+            Matcher m = t.getMatcher().reset(template);
+            while (m.find()) {
+                String[] group = new String[m.groupCount() + 1];
+                for (int i = 0; i <= m.groupCount(); ++i) group[i] = m.group(i);
+                matches.put(m.start(), describe(t, m.start(), m.end(), group));
+                ends.put(m.start(), m.end());
+            }
+        }
+        int upTo = 0;
+        for (Map.Entry<Integer, Integer> e : ends.entrySet()) {
+            if (e.getKey() < upTo) return null;
+            upTo = e.getValue();
+        }
+        return new ArrayList<>(matches.values());
+    }
+}